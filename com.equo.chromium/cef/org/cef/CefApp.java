@@ -127,6 +127,7 @@ public class CefApp extends CefAppHandlerAdapter {
     private static CefAppHandler appHandler_ = null;
     private static CefAppState state_ = CefAppState.NONE;
     private static WindowingToolkit wt = null;
+    private final Runnable messageLoopWork = () -> N_DoMessageLoopWork();
     private HashSet<CefClient> clients_ = new HashSet<CefClient>();
     private CefSettings settings_ = null;
 
@@ -505,6 +506,7 @@ public class CefApp extends CefAppHandlerAdapter {
         // Execute on the AWT event dispatching thread.
         if (settings_.multi_threaded_message_loop)
             return;
+        if (wt.scheduleMessageLoopWork(delay_ms, messageLoopWork)) return;
         if (!settings_.external_message_pump) {
             wt.startMessageLoopTimer((int) delay_ms, () -> N_DoMessageLoopWork());
             return;
@@ -0,0 +1,199 @@
+/****************************************************************************
+**
+** Copyright (C) 2024 Equo
+**
+** This file is part of Equo Chromium.
+**
+** Commercial License Usage
+** Licensees holding valid commercial Equo licenses may use this file in
+** accordance with the commercial license agreement provided with the
+** Software or, alternatively, in accordance with the terms contained in
+** a written agreement between you and Equo. For licensing terms
+** and conditions see https://www.equo.dev/terms.
+**
+** GNU General Public License Usage
+** Alternatively, this file may be used under the terms of the GNU
+** General Public License version 3 as published by the Free Software
+** Foundation. Please review the following
+** information to ensure the GNU General Public License requirements will
+** be met: https://www.gnu.org/licenses/gpl-3.0.html.
+**
+****************************************************************************/
+
+
+package org.cef;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs CEF on a dedicated thread for headless browsers. Tasks from any thread
+ * are queued on a lock-free queue and run on that thread in order, between the
+ * message loop iterations CEF asks for through the external message pump. With
+ * the multi-threaded message loop CEF runs its own UI thread and this thread
+ * only runs the tasks.
+ */
+public class CefAppHeadless implements WindowingToolkit {
+    private static final long MAX_IDLE_MS = 1000;
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicLong dueAt = new AtomicLong(Long.MAX_VALUE);
+    private final CompletableFuture<Void> terminated = new CompletableFuture<>();
+    private final Thread thread;
+    private volatile Runnable work;
+    private volatile boolean running = true;
+
+    public CefAppHeadless() {
+        thread = new Thread(this::loop, "chromium-Headless");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    private void loop() {
+        while (running) {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                runSafely(task);
+            }
+            long due = dueAt.get();
+            long now = System.nanoTime();
+            if (due <= now) {
+                if (dueAt.compareAndSet(due, Long.MAX_VALUE)) {
+                    Runnable work = this.work;
+                    if (work != null) {
+                        runSafely(work);
+                        // CEF asks for the next iteration, this is only a backstop
+                        schedule(MAX_IDLE_MS);
+                    }
+                }
+            } else if (tasks.isEmpty() && running) {
+                LockSupport.parkNanos(this, Math.min(due - now, TimeUnit.MILLISECONDS.toNanos(MAX_IDLE_MS)));
+            }
+        }
+        // Tasks queued before the shutdown still complete, failing without CEF
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            runSafely(task);
+        }
+        terminated.complete(null);
+    }
+
+    private static void runSafely(Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+    }
+
+    /**
+     * Asks for an iteration in delayMs, unless an earlier one is already due.
+     */
+    private void schedule(long delayMs) {
+        long target = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMs));
+        long due;
+        do {
+            due = dueAt.get();
+            if (due <= target) return;
+        } while (!dueAt.compareAndSet(due, target));
+        if (!isEDT()) LockSupport.unpark(thread);
+    }
+
+    /**
+     * Queues a task to run on the CEF thread.
+     */
+    public void execute(Runnable task) {
+        if (!running) throw new IllegalStateException("The headless runtime was shut down");
+        tasks.add(task);
+        if (!isEDT()) LockSupport.unpark(thread);
+    }
+
+    /**
+     * @return Completed once the CEF thread has finished.
+     */
+    public CompletableFuture<Void> getTermination() {
+        return terminated;
+    }
+
+    @Override
+    public CefClient createClient() {
+        return new CefClientStandalone() {
+            @Override
+            protected void onLastBrowserClosed() {
+                // The runtime keeps running without browsers
+                if (getAllBrowser().length == 0) dispose();
+            }
+        };
+    }
+
+    @Override
+    public boolean isEDT() {
+        return Thread.currentThread() == thread;
+    }
+
+    @Override
+    public void runInEDT(Runnable r) {
+        execute(r);
+    }
+
+    @Override
+    public void runInEDTAndWait(Runnable r) throws InterruptedException, InvocationTargetException {
+        if (isEDT()) {
+            r.run();
+            return;
+        }
+        FutureTask<Void> task = new FutureTask<>(r, null);
+        execute(task);
+        try {
+            task.get();
+        } catch (ExecutionException e) {
+            throw new InvocationTargetException(e.getCause());
+        }
+    }
+
+    @Override
+    public boolean scheduleMessageLoopWork(long delay_ms, Runnable work) {
+        this.work = work;
+        if (delay_ms == -1 && isEDT()) {
+            dueAt.set(Long.MAX_VALUE);
+            work.run();
+            schedule(MAX_IDLE_MS);
+        } else {
+            schedule(delay_ms);
+        }
+        return true;
+    }
+
+    @Override
+    public void stopMessageLoopTimer() {
+        dueAt.set(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void startMessageLoopTimer(int ms, Runnable run) {
+        scheduleMessageLoopWork(ms, run);
+    }
+
+    @Override
+    public void shutdown(Runnable runnable) {
+        Runnable stop = () -> {
+            runnable.run();
+            running = false;
+        };
+        if (isEDT()) {
+            stop.run();
+        } else {
+            execute(stop);
+        }
+    }
+}
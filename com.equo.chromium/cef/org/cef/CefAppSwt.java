@@ -28,13 +28,47 @@ import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
 
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.SWTException;
 import org.eclipse.swt.graphics.Device;
 import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Listener;
 
+/**
+ * Pumps the CEF message loop on the SWT display thread. Unless
+ * chromium.message_pump is fixed, iterations run when CEF asks for them and
+ * redundant requests are coalesced into the earliest one. Between requests
+ * the loop is pumped every loopTime while iterations find work, or user input
+ * arrives. With the external message pump, where CEF asks for the work it
+ * has, it backs off up to chromium.pump_max_idle milliseconds once idle;
+ * otherwise loopTime stays the ceiling.
+ */
 public class CefAppSwt implements WindowingToolkit {
+	private static final long BUSY_WORK_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+	private static final int[] INPUT_EVENTS = { SWT.KeyDown, SWT.MouseDown, SWT.MouseMove, SWT.MouseWheel };
+
+	private final boolean adaptive;
+	private final long maxIdleDelay;
+	private final AtomicLong dueAt = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicBoolean armPosted = new AtomicBoolean();
+	private final Runnable pump = this::pump;
+	private final Runnable arm = this::arm;
+	private final Listener inputListener = e -> burst();
+	private volatile Runnable work;
+	private volatile boolean stopped;
+	private volatile boolean workRequested;
+	private boolean filtersInstalled;
+	private long idleDelay;
+	private long lastPumpStart;
+	private long rateWindowStart = System.nanoTime();
+	private int rateWindowPumps;
+	private volatile int pumpRate;
+	private volatile LongConsumer workTimeRecorder;
 
 	private Timer timer;
 	private Runnable loop;
@@ -58,6 +92,10 @@ public class CefAppSwt implements WindowingToolkit {
 		} else {
 			this.external_message_pump = external_message_pump;
 		}
+		adaptive = System.getProperty("q7id") == null && !"fixed".equals(System.getProperty("chromium.message_pump"));
+		maxIdleDelay = this.external_message_pump ? Math.max(loopTime, Long.getLong("chromium.pump_max_idle", 1000))
+				: loopTime;
+		idleDelay = loopTime;
 	}
 
 	public CefAppSwt(boolean external_message_pump) {
@@ -89,8 +127,146 @@ public class CefAppSwt implements WindowingToolkit {
 		display.syncExec(r);
 	}
 
+	@Override
+	public boolean scheduleMessageLoopWork(long delay_ms, Runnable work) {
+		if (!adaptive) {
+			return false;
+		}
+		this.work = work;
+		if (delay_ms == -1) {
+			runNow();
+		} else {
+			schedule(delay_ms);
+		}
+		return true;
+	}
+
+	/**
+	 * Asks for an iteration in delayMs, unless an earlier one is already due.
+	 */
+	private void schedule(long delayMs) {
+		if (stopped) {
+			return;
+		}
+		long target = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMs));
+		long due;
+		do {
+			due = dueAt.get();
+			if (due <= target) {
+				return;
+			}
+		} while (!dueAt.compareAndSet(due, target));
+		if (Display.getCurrent() == display) {
+			arm();
+		} else if (armPosted.compareAndSet(false, true)) {
+			try {
+				if (!display.isDisposed())
+					display.asyncExec(arm);
+			} catch (SWTException e) {
+				if (e.code != SWT.ERROR_DEVICE_DISPOSED) {
+					throw e;
+				}
+			}
+		}
+	}
+
+	private void arm() {
+		armPosted.set(false);
+		long due = dueAt.get();
+		if (due == Long.MAX_VALUE || stopped || display.isDisposed()) {
+			return;
+		}
+		long delay = TimeUnit.NANOSECONDS.toMillis(due - System.nanoTime());
+		display.timerExec((int) Math.max(0, delay), pump);
+	}
+
+	private void runNow() {
+		if (Display.getCurrent() == display) {
+			idleDelay = loopTime;
+			pump();
+		} else {
+			workRequested = true;
+			schedule(0);
+		}
+	}
+
+	private void pump() {
+		dueAt.set(Long.MAX_VALUE);
+		Runnable work = this.work;
+		if (stopped || work == null) {
+			return;
+		}
+		if (!filtersInstalled) {
+			filtersInstalled = true;
+			for (int event : INPUT_EVENTS) {
+				display.addFilter(event, inputListener);
+			}
+		}
+		if (workRequested) {
+			workRequested = false;
+			idleDelay = loopTime;
+		}
+		long start = System.nanoTime();
+		lastPumpStart = start;
+		work.run();
+		long elapsed = System.nanoTime() - start;
+		recordPump(start, elapsed);
+		idleDelay = elapsed > BUSY_WORK_NANOS ? loopTime : Math.min(maxIdleDelay, Math.max(loopTime, idleDelay * 2));
+		schedule(idleDelay);
+	}
+
+	/**
+	 * Pumps once loopTime has passed since the last iteration, and keeps pumping
+	 * every loopTime while there is input.
+	 */
+	private void burst() {
+		if (idleDelay > loopTime) {
+			idleDelay = loopTime;
+			long sinceLastPump = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastPumpStart);
+			schedule(Math.max(0, loopTime - sinceLastPump));
+		}
+	}
+
+	private void recordPump(long start, long elapsed) {
+		LongConsumer recorder = workTimeRecorder;
+		if (recorder != null) {
+			recorder.accept(elapsed);
+		}
+		rateWindowPumps++;
+		long window = start - rateWindowStart;
+		if (window >= TimeUnit.SECONDS.toNanos(1)) {
+			pumpRate = (int) (rateWindowPumps * TimeUnit.SECONDS.toNanos(1) / window);
+			rateWindowPumps = 0;
+			rateWindowStart = start;
+		}
+	}
+
+	/**
+	 * @return The message loop iterations per second, measured over the last
+	 *         second or more with iterations.
+	 */
+	public int getPumpRate() {
+		return pumpRate;
+	}
+
+	/**
+	 * @param recorder Receives the nanoseconds taken by each message loop
+	 *                 iteration, or null.
+	 */
+	public void setWorkTimeRecorder(LongConsumer recorder) {
+		workTimeRecorder = recorder;
+	}
+
 	@Override
 	public void stopMessageLoopTimer() {
+		if (adaptive) {
+			stopped = true;
+			dueAt.set(Long.MAX_VALUE);
+			if (!display.isDisposed()) {
+				display.timerExec(-1, pump);
+			}
+			return;
+		}
 		if (loop != null && !display.isDisposed()) {
 			display.timerExec(-1, loop);
 			loop = null;
@@ -103,7 +279,10 @@ public class CefAppSwt implements WindowingToolkit {
 
 	@Override
 	public void startMessageLoopTimer(int ms, Runnable run) {
-		if (external_message_pump) {
+		if (adaptive) {
+			stopped = false;
+			scheduleMessageLoopWork(ms, run);
+		} else if (external_message_pump) {
 			if (!display.isDisposed()) {
 				this.loop = run;
 				display.timerExec(ms, run);
@@ -27,6 +27,14 @@ public class CefClientStandalone extends CefClient {
             }
             return;
         }
+        onLastBrowserClosed();
+    }
+
+    /**
+     * Called when the last browser of the last client has closed. Quits the
+     * message loop by default.
+     */
+    protected void onLastBrowserClosed() {
         CefApp.getInstance().quitMessageLoop();
     }
 
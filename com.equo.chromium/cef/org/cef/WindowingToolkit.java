@@ -40,4 +40,15 @@ public interface WindowingToolkit {
         return DEFAULT_LOOP_TIME;
     };
 
+    /**
+     * Schedules a message loop iteration with the toolkit's own scheduler.
+     *
+     * @param delay_ms the delay requested by CEF, or -1 to run it now.
+     * @param work performs the iteration.
+     * @return false to let CefApp schedule it.
+     */
+    default boolean scheduleMessageLoopWork(long delay_ms, Runnable work) {
+        return false;
+    }
+
 }
\ No newline at end of file
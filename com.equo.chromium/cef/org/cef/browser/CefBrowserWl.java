@@ -32,7 +32,9 @@ import org.cef.misc.Point;
 import org.cef.misc.Rectangle;
 
 import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
 
 public class CefBrowserWl extends CefBrowser_N implements CefRenderHandler {
@@ -43,24 +45,28 @@ public class CefBrowserWl extends CefBrowser_N implements CefRenderHandler {
         public Rectangle getViewRect(CefBrowser browser) {
             return window;
         };
+        @Override
+        public void onPaint(CefBrowser browser, boolean popup, Rectangle[] dirtyRects,
+                ByteBuffer buffer, int width, int height) {
+            CefBrowserWl.this.onPaint(browser, popup, dirtyRects, buffer, width, height);
+        }
+
         @Override
         public void addOnPaintListener(Consumer<CefPaintEvent> listener) {
-            // TODO Auto-generated method stub
-            
+            CefBrowserWl.this.addOnPaintListener(listener);
         }
 
         @Override
         public void setOnPaintListener(Consumer<CefPaintEvent> listener) {
-            // TODO Auto-generated method stub
-            
+            CefBrowserWl.this.setOnPaintListener(listener);
         }
 
         @Override
         public void removeOnPaintListener(Consumer<CefPaintEvent> listener) {
-            // TODO Auto-generated method stub
-            
+            CefBrowserWl.this.removeOnPaintListener(listener);
         };
     };
+    private final List<Consumer<CefPaintEvent>> onPaintListeners = new CopyOnWriteArrayList<>();
 
     public CefBrowserWl(CefClient client, String url, CefRequestContext context) {
         super(client, url, context, null, null, null);
@@ -148,9 +154,20 @@ public class CefBrowserWl extends CefBrowser_N implements CefRenderHandler {
     @Override
     public void onPopupSize(CefBrowser browser, Rectangle size) {}
 
+    /**
+     * Delivers the frame to the paint listeners. The buffer is only valid while
+     * the listeners run.
+     */
     @Override
     public void onPaint(CefBrowser browser, boolean popup, Rectangle[] dirtyRects,
-            ByteBuffer buffer, int width, int height) {}
+            ByteBuffer buffer, int width, int height) {
+        if (onPaintListeners.isEmpty()) return;
+        CefPaintEvent paintEvent =
+                new CefPaintEvent(browser, popup, dirtyRects, buffer, width, height);
+        for (Consumer<CefPaintEvent> listener : onPaintListeners) {
+            listener.accept(paintEvent);
+        }
+    }
 
     @Override
     public boolean onCursorChange(CefBrowser browser, int cursorType) {
@@ -171,19 +188,17 @@ public class CefBrowserWl extends CefBrowser_N implements CefRenderHandler {
 
     @Override
     public void addOnPaintListener(Consumer<CefPaintEvent> listener) {
-        // TODO Auto-generated method stub
-        
+        onPaintListeners.add(listener);
     }
 
     @Override
     public void setOnPaintListener(Consumer<CefPaintEvent> listener) {
-        // TODO Auto-generated method stub
-        
+        onPaintListeners.clear();
+        onPaintListeners.add(listener);
     }
 
     @Override
     public void removeOnPaintListener(Consumer<CefPaintEvent> listener) {
-        // TODO Auto-generated method stub
-        
+        onPaintListeners.remove(listener);
     }
 }
@@ -41,6 +41,7 @@ abstract class CefBrowser_N extends CefNativeAdapter implements CefBrowser {
     private volatile CefDevToolsClient devToolsClient_ = null;
     private boolean closeAllowed_ = false;
     private volatile boolean isClosed_ = false;
+    private volatile int identifier_ = -1;
     private volatile boolean isClosing_ = false;
     private Object reference;
     private final CefBrowserSettings settings_;
@@ -323,8 +324,13 @@ abstract class CefBrowser_N extends CefNativeAdapter implements CefBrowser {
 
     @Override
     public int getIdentifier() {
+        // The identifier never changes once the native browser exists.
+        int identifier = identifier_;
+        if (identifier > 0) return identifier;
         try {
-            return N_GetIdentifier();
+            identifier = N_GetIdentifier();
+            if (identifier > 0) identifier_ = identifier;
+            return identifier;
         } catch (UnsatisfiedLinkError ule) {
             ule.printStackTrace();
             return -1;
@@ -23,11 +23,14 @@
 
 package com.equo.chromium;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 import org.cef.CefApp;
 import org.cef.CefApp.CefAppState;
@@ -36,11 +39,13 @@ import org.cef.browser.CefBrowser;
 import org.cef.browser.CefBrowserStandalone;
 import org.cef.browser.CefBrowserSwt;
 import org.cef.browser.CefBrowserWl;
+import org.cef.browser.CefPaintEvent;
 import org.cef.browser.CefBrowserSwing;
 import org.cef.misc.Rectangle;
 
 import com.equo.chromium.internal.Engine;
 import com.equo.chromium.internal.Engine.BrowserType;
+import com.equo.chromium.internal.HeadlessRuntimeImpl;
 import com.equo.chromium.internal.IndependentBrowser;
 import com.equo.chromium.internal.PopupBrowser;
 import com.equo.chromium.internal.Standalone;
@@ -48,7 +53,12 @@ import com.equo.chromium.internal.SwingBrowser;
 import com.equo.chromium.internal.Windowless;
 import com.equo.chromium.swt.Browser;
 import com.equo.chromium.swt.internal.WebBrowser;
+import com.equo.chromium.utils.BackpressurePolicy;
+import com.equo.chromium.utils.EventAction;
+import com.equo.chromium.utils.EventListener;
+import com.equo.chromium.utils.EventType;
 import com.equo.chromium.utils.PdfPrintSettings;
+import com.equo.chromium.utils.ScreenshotSettings;
 
 /**
  * It provides the methods for the creation of the different types of browsers
@@ -240,6 +250,21 @@ public interface ChromiumBrowser {
 		Class.forName("com.equo.chromium.internal.Engine");
 	}
 
+	/**
+	 * Get the headless runtime, starting it on the first call. It runs CEF on
+	 * its own thread, so Windowless browsers can be created and used from any
+	 * thread without calling {@link #startBrowsers()}.
+	 * 
+	 * @return The headless runtime.
+	 * @throws IllegalStateException if browsers were already initialized
+	 *                               without the runtime, or it was shut down.
+	 * 
+	 * @since 124.0.0
+	 */
+	public static HeadlessRuntime headlessRuntime() {
+		return HeadlessRuntimeImpl.get();
+	}
+
 	/**
 	 * Start the CEF event loop when creating in Standalone and Windowless browsers.
 	 * 
@@ -402,6 +427,39 @@ public interface ChromiumBrowser {
 	 */
 	public CompletableFuture<byte[]> captureScreenshot(int x, int y, int width, int height, int scale);
 
+	/**
+	 * Capture a screenshot with specific settings. The image is decoded outside
+	 * of the browser threads.
+	 * 
+	 * This method cannot be called from the main thread.
+	 * 
+	 * @param settings The screenshot settings to use. If null then defaults will
+	 *                 be used.
+	 * @return CompletableFuture<byte[]> which will contain the decoded image data
+	 *         in the requested format.
+	 * 
+	 * @since 124.0.0
+	 */
+	public CompletableFuture<byte[]> captureScreenshot(ScreenshotSettings settings);
+
+	/**
+	 * Capture a screenshot with specific settings and pass the decoded image to the
+	 * consumer. The buffer is reused for later screenshots once the consumer
+	 * returns, so it must not be kept.
+	 * 
+	 * This method cannot be called from the main thread.
+	 * 
+	 * @param settings The screenshot settings to use. If null then defaults will
+	 *                 be used.
+	 * @param consumer Receives a buffer with the decoded image data in the
+	 *                 requested format, between its position and limit.
+	 * @return CompletableFuture<Void> which will be completed after the consumer
+	 *         returns.
+	 * 
+	 * @since 124.0.0
+	 */
+	public CompletableFuture<Void> captureScreenshot(ScreenshotSettings settings, Consumer<ByteBuffer> consumer);
+
 	/**
 	 * Ignore certificate errors in the browser. If used when the browser is
 	 * defined, a new request context is created for the browser and will not affect
@@ -442,6 +500,42 @@ public interface ChromiumBrowser {
 	 */
 	public Object getUIComponent();
 
+	/**
+	 * Adds a listener to receive the frames painted by a Windowless browser. Each
+	 * event contains the whole BGRA frame and the regions changed since the
+	 * previous event received. Frames are delivered in order outside of the
+	 * browser threads; frames painted while listeners are busy are merged into
+	 * the next event. The frame buffer is reused once the listeners return, so it
+	 * must not be kept.
+	 * 
+	 * @param listener The frame listener to add.
+	 * @throws UnsupportedOperationException if the browser is not Windowless.
+	 * 
+	 * @since 124.0.0
+	 */
+	public void addFrameListener(Consumer<CefPaintEvent> listener);
+
+	/**
+	 * Removes a previously added frame listener from a Windowless browser.
+	 * 
+	 * @param listener The frame listener to remove.
+	 * @throws UnsupportedOperationException if the browser is not Windowless.
+	 * 
+	 * @since 124.0.0
+	 */
+	public void removeFrameListener(Consumer<CefPaintEvent> listener);
+
+	/**
+	 * Sets the maximum rate in frames per second at which a Windowless browser
+	 * paints. The minimum value is 1 and the maximum value is 60, default is 30.
+	 * 
+	 * @param frameRate The maximum frame rate.
+	 * @throws UnsupportedOperationException if the browser is not Windowless.
+	 * 
+	 * @since 124.0.0
+	 */
+	public void setFrameRate(int frameRate);
+
 	/**
 	 * Checks whether the browser is currently loading a page.
 	 * 
@@ -572,4 +666,52 @@ public interface ChromiumBrowser {
 	 * @since 124.0.0
 	 */
 	public Storage getSessionStorage();
+
+	/**
+	 * Subscribes an action to an event type of the browser.
+	 * 
+	 * @return Returns the identifier of the subscription.
+	 * 
+	 * @since 124.0.0
+	 */
+	public long subscribe(EventType eventType, EventAction action);
+
+	/**
+	 * Subscribes a listener to an event type of the browser.
+	 * 
+	 * @return Returns the identifier of the subscription.
+	 * 
+	 * @since 124.0.0
+	 */
+	public long subscribe(EventType eventType, EventListener listener);
+
+	/**
+	 * @param idEvent The identifier returned by subscribe.
+	 * @return Returns true if the subscription was removed.
+	 * 
+	 * @since 124.0.0
+	 */
+	public boolean unSubscribe(long idEvent);
+
+	/**
+	 * Removes all the subscriptions of the browser.
+	 * 
+	 * @since 124.0.0
+	 */
+	public void unSubscribeAll();
+
+	/**
+	 * Sets the executor that delivers the events of this browser. Null restores
+	 * the shared default executor.
+	 * 
+	 * @since 124.0.0
+	 */
+	public void setEventExecutor(Executor executor);
+
+	/**
+	 * Sets the policy applied when the subscribers of an event type fall behind.
+	 * 
+	 * @since 124.0.0
+	 */
+	public void setEventBackpressure(EventType eventType, BackpressurePolicy policy);
 }
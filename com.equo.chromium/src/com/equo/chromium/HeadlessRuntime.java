@@ -0,0 +1,83 @@
+/****************************************************************************
+**
+** Copyright (C) 2024 Equo
+**
+** This file is part of Equo Chromium.
+**
+** Commercial License Usage
+** Licensees holding valid commercial Equo licenses may use this file in
+** accordance with the commercial license agreement provided with the
+** Software or, alternatively, in accordance with the terms contained in
+** a written agreement between you and Equo. For licensing terms
+** and conditions see https://www.equo.dev/terms.
+**
+** GNU General Public License Usage
+** Alternatively, this file may be used under the terms of the GNU
+** General Public License version 3 as published by the Free Software
+** Foundation. Please review the following
+** information to ensure the GNU General Public License requirements will
+** be met: https://www.gnu.org/licenses/gpl-3.0.html.
+**
+****************************************************************************/
+package com.equo.chromium;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs Windowless browsers on a dedicated CEF thread, so they can be created
+ * and used from any thread without starting the CEF loop. Calls to the
+ * browsers created by the runtime run on that thread in the order they were
+ * made. Calls without a result return right away, and if one fails the next
+ * call throws an IllegalStateException caused by the failure. Calls returning
+ * a future return right away too, and the others wait for their result, which
+ * is refused on the CEF UI thread. Event subscriptions and their settings take
+ * effect at once from any thread, so listeners see the events of calls made
+ * after them.
+ * Obtained with {@link ChromiumBrowser#headlessRuntime()}.
+ * 
+ * @since 124.0.0
+ */
+public interface HeadlessRuntime {
+
+	/**
+	 * Creates a Windowless browser on the CEF thread.
+	 * 
+	 * @param url The initial url.
+	 * @return A future completed with the browser.
+	 */
+	CompletableFuture<ChromiumBrowser> windowless(String url);
+
+	/**
+	 * Creates a Windowless browser with the given bounds on the CEF thread.
+	 * 
+	 * @param url    The initial url.
+	 * @param x      The x position of the view.
+	 * @param y      The y position of the view.
+	 * @param width  The width of the view.
+	 * @param height The height of the view.
+	 * @return A future completed with the browser.
+	 */
+	CompletableFuture<ChromiumBrowser> windowless(String url, int x, int y, int width, int height);
+
+	/**
+	 * Runs a task on the CEF thread.
+	 * 
+	 * @param task The task to run.
+	 * @return A future completed with the result of the task.
+	 */
+	<T> CompletableFuture<T> submit(Callable<T> task);
+
+	/**
+	 * @return Whether the current thread is the CEF thread of the runtime.
+	 */
+	boolean isRuntimeThread();
+
+	/**
+	 * Closes all the browsers and shuts CEF down. CEF can not be initialized
+	 * again in the same process.
+	 * 
+	 * @return A future completed once the CEF thread has finished.
+	 */
+	CompletableFuture<Void> shutdown();
+}
@@ -0,0 +1,195 @@
+/****************************************************************************
+**
+** Copyright (C) 2024 Equo
+**
+** This file is part of Equo Chromium.
+**
+** Commercial License Usage
+** Licensees holding valid commercial Equo licenses may use this file in
+** accordance with the commercial license agreement provided with the
+** Software or, alternatively, in accordance with the terms contained in
+** a written agreement between you and Equo. For licensing terms
+** and conditions see https://www.equo.dev/terms.
+**
+** GNU General Public License Usage
+** Alternatively, this file may be used under the terms of the GNU
+** General Public License version 3 as published by the Free Software
+** Foundation. Please review the following
+** information to ensure the GNU General Public License requirements will
+** be met: https://www.gnu.org/licenses/gpl-3.0.html.
+**
+****************************************************************************/
+package com.equo.chromium.internal;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cef.browser.CefBrowser;
+import org.cef.browser.CefDevToolsClient.DevToolsException;
+import org.cef.browser.CefDevToolsClient.EventListener;
+import org.cef.callback.CefDevToolsMessageObserverAdapter;
+
+import com.github.cliftonlabs.json_simple.JsonObject;
+import com.github.cliftonlabs.json_simple.Jsoner;
+
+/**
+ * Single DevTools protocol session of a browser. All the method calls of the
+ * browser share one message observer; results are matched to their caller by
+ * id and events are fanned out to the listeners of their method.
+ */
+public class DevToolsSession {
+	private static final String ALL_EVENTS = "*";
+	private static final long TIMEOUT = Long.getLong("chromium.devtools_timeout", 30000);
+	private static final ScheduledThreadPoolExecutor timeouts = new ScheduledThreadPoolExecutor(1, r -> {
+		Thread thread = Executors.defaultThreadFactory().newThread(r);
+		thread.setName("chromium-DevTools");
+		thread.setDaemon(true);
+		return thread;
+	});
+	static {
+		timeouts.setRemoveOnCancelPolicy(true);
+	}
+
+	private final CefBrowser browser;
+	private final AtomicInteger messageId = new AtomicInteger(1);
+	private final Map<Integer, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+	private final Map<String, List<EventListener>> eventListeners = new ConcurrentHashMap<>();
+	private final CefDevToolsMessageObserverAdapter observer;
+	private volatile boolean disposed;
+
+	DevToolsSession(CefBrowser browser) {
+		this.browser = browser;
+		observer = new CefDevToolsMessageObserverAdapter(browser) {
+			@Override
+			public void onDevToolsMethodResult(CefBrowser cefBrowser, int messageId, boolean success, String result,
+					int resultSize) {
+				CompletableFuture<String> future = pending.remove(messageId);
+				if (future == null) {
+					return;
+				}
+				if (success) {
+					future.complete(result);
+				} else {
+					future.completeExceptionally(new DevToolsException("DevTools method failed", result));
+				}
+			}
+
+			@Override
+			public void onDevToolsEvent(CefBrowser cefBrowser, String method, String params, int paramsSize) {
+				fireEvent(eventListeners.get(method), method, params);
+				fireEvent(eventListeners.get(ALL_EVENTS), method, params);
+			}
+
+			@Override
+			public void onDevToolsAgentDetached(CefBrowser cefBrowser) {
+				failPending(new DevToolsException("DevTools agent detached"));
+			}
+		};
+	}
+
+	/**
+	 * Executes a DevTools protocol method.
+	 * 
+	 * @param method The method name, e.g. Runtime.evaluate.
+	 * @param params The JSON object with the parameters, or null.
+	 * @return Returns a CompletableFuture with the JSON result of the method. It
+	 *         completes exceptionally if the method fails or there is no result
+	 *         after chromium.devtools_timeout milliseconds.
+	 */
+	public CompletableFuture<String> execute(String method, String params) {
+		CompletableFuture<String> result = new CompletableFuture<>();
+		if (disposed) {
+			result.completeExceptionally(new DevToolsException("DevTools session is closed"));
+			return result;
+		}
+		int id = messageId.getAndIncrement();
+		pending.put(id, result);
+		if (TIMEOUT > 0) {
+			ScheduledFuture<?> timeout = timeouts.schedule(() -> {
+				if (pending.remove(id) != null) {
+					result.completeExceptionally(new TimeoutException(method + " timed out"));
+				}
+			}, TIMEOUT, TimeUnit.MILLISECONDS);
+			result.whenComplete((r, e) -> timeout.cancel(false));
+		}
+		StringBuilder message = new StringBuilder(64 + (params != null ? params.length() : 0));
+		message.append("{\"id\":").append(id).append(",\"method\":\"").append(Jsoner.escape(method)).append('"');
+		if (params != null) {
+			message.append(",\"params\":").append(params);
+		}
+		message.append('}');
+		String devToolsMessage = message.toString();
+		Engine.debug("sendDevToolsMessage: " + method + " " + id, browser);
+		browser.sendDevToolsMessage(devToolsMessage, devToolsMessage.length());
+		return result;
+	}
+
+	public CompletableFuture<String> execute(String method, JsonObject params) {
+		return execute(method, params != null ? params.toJson() : null);
+	}
+
+	/**
+	 * Adds a listener of a DevTools protocol event. Events must be enabled per
+	 * domain, e.g. by executing Network.enable. Listeners are called on the CEF
+	 * UI thread and must not block.
+	 * 
+	 * @param method   The event name, e.g. Network.requestWillBeSent, or "*" for
+	 *                 all the events.
+	 * @param listener The listener to add.
+	 */
+	public void addEventListener(String method, EventListener listener) {
+		eventListeners.computeIfAbsent(method, m -> new CopyOnWriteArrayList<>()).add(listener);
+	}
+
+	public void removeEventListener(String method, EventListener listener) {
+		List<EventListener> listeners = eventListeners.get(method);
+		if (listeners != null) {
+			listeners.remove(listener);
+		}
+	}
+
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	void dispose() {
+		if (disposed) {
+			return;
+		}
+		disposed = true;
+		observer.dispose();
+		eventListeners.clear();
+		failPending(new DevToolsException("DevTools session is closed"));
+	}
+
+	private void failPending(Throwable cause) {
+		for (Integer id : pending.keySet()) {
+			CompletableFuture<String> future = pending.remove(id);
+			if (future != null) {
+				future.completeExceptionally(cause);
+			}
+		}
+	}
+
+	private void fireEvent(List<EventListener> listeners, String method, String params) {
+		if (listeners == null) {
+			return;
+		}
+		for (EventListener listener : listeners) {
+			try {
+				listener.onEvent(method, params);
+			} catch (Throwable t) {
+				t.printStackTrace();
+			}
+		}
+	}
+}
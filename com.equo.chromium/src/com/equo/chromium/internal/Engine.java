@@ -46,6 +46,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.cef.CefApp;
+import org.cef.CefAppHeadless;
 import org.cef.CefAppStandalone;
 import org.cef.CefAppSwing;
 import org.cef.CefAppSwt;
@@ -62,6 +63,8 @@ import org.cef.callback.CefSchemeRegistrar;
 import org.cef.handler.CefAppHandlerAdapter;
 
 import com.equo.chromium.swt.internal.SWTEngine;
+import com.equo.chromium.swt.internal.spi.BinaryResourceHandler;
+import com.equo.chromium.swt.internal.spi.CommunicationManager;
 import com.equo.chromium.swt.internal.spi.DynamicCefSchemeHandlerFactory;
 import com.equo.chromium.swt.internal.spi.SchemeDomainPair;
 import com.equo.chromium.swt.internal.spi.SchemeHandler;
@@ -82,11 +85,16 @@ public class Engine {
 
 	private static AtomicBoolean shuttingDown = new AtomicBoolean();
 	private static List<SchemeDomainPair> registeredSchemeData;
+	private static String[][] registeredSchemesByLength = new String[0][];
 
 	private static CefApp app;
+	private static CefAppSwt messagePump;
+	private static CefAppHeadless headlessToolkit;
+	private static final LatencyHistogram messagePumpWorkTime = new LatencyHistogram();
 	public static final CompletableFuture<Boolean> ready = new CompletableFuture<>();
 	private static AtomicBoolean closing = new AtomicBoolean();
 	private static boolean multiThreaded;
+	private static volatile Thread uiThread;
 
 	public static boolean setDarkModeBackground = false;
 
@@ -279,13 +287,19 @@ public class Engine {
 				} else {
 					registeredSchemeData = Collections.emptyList();
 				}
+				registeredSchemesByLength = indexSchemes(registeredSchemeData);
 
 				WindowingToolkit windowToolkit = null;
 				switch (browserType) {
 				case HEADLESS:
 				case STANDALONE:
-					windowToolkit = new CefAppStandalone();
-					settings.external_message_pump = false;
+					if (browserType == BrowserType.HEADLESS && headlessToolkit != null) {
+						windowToolkit = headlessToolkit;
+						settings.external_message_pump = !settings.multi_threaded_message_loop;
+					} else {
+						windowToolkit = new CefAppStandalone();
+						settings.external_message_pump = false;
+					}
 					break;
 				case SWING:
 					if (OS.isLinux()) {
@@ -297,7 +311,9 @@ public class Engine {
 					break;
 				default:
 					int loopTime = (!settings.external_message_pump && !registeredSchemeData.isEmpty()) ? 1000 / 180 : WindowingToolkit.DEFAULT_LOOP_TIME;
-					windowToolkit = new CefAppSwt(loopTime, settings.external_message_pump);
+					messagePump = new CefAppSwt(loopTime, settings.external_message_pump);
+					messagePump.setWorkTimeRecorder(messagePumpWorkTime::record);
+					windowToolkit = messagePump;
 					break;
 				}
 
@@ -340,6 +356,7 @@ public class Engine {
 
 					@Override
 					public void onContextInitialized() {
+						uiThread = Thread.currentThread();
 						if (!registeredSchemeData.isEmpty() && app != null) {
 							for (final SchemeDomainPair schemeData : registeredSchemeData) {
 								SchemeHandler schemeHandler = schemeHandlerManager
@@ -349,6 +366,11 @@ public class Engine {
 												: new StaticCefSchemeHandlerFactory(schemeHandlerManager, schemeData));
 							}
 						}
+						CommunicationManager commManager = CommunicationManager.get();
+						if (commManager != null) {
+							app.registerSchemeHandlerFactory("https", BinaryResourceHandler.HOST,
+									BinaryResourceHandler.createFactory(commManager));
+						}
 						if (BrowserType.SWT.equals(browserType)) {
 							SWTEngine.onContextInitialized(app);
 						}
@@ -390,15 +412,19 @@ public class Engine {
 	private static void printSystemProperties() {
 		System.out.println("------- Chromium system properties: -------");
 
-		String[] propertyNames = { "chromium.args", "chromium.cache_path", "chromium.custom_protocol", "chromium.debug",
-				"chromium.debug_port", "chromium.dialogs", "chromium.disable-download-progress",
+		String[] propertyNames = { "chromium.args", "chromium.cache_path", "chromium.comm_order_scope",
+				"chromium.comm_threads", "chromium.custom_protocol", "chromium.debug", "chromium.debug_port",
+				"chromium.devtools_timeout", "chromium.dialogs", "chromium.disable-download-progress",
 				"chromium.disable_script_extensions", "chromium.downloadLocationListener",
-				"chromium.enable_crash_reporter", "chromium.external_message_pump", "chromium.find_dialog",
-				"chromium.force_windowless_swt", "chromium.headless", "chromium.home", "chromium.init_threads",
-				"chromium.log_file", "chromium.multi_threaded_message_loop", "chromium.path",
-				"chromium.proxy_pac_script", "chromium.remote_debugging_port", "chromium.resize",
-				"chromium.setTextAsUrl", "chromium.ssl", "chromium.ssl.cert", "chromium.suspend_threads",
-				"chromium.turbolinks", "java.home", "java.specification.vendor", "java.vendor.version", "java.version",
+				"chromium.enable_crash_reporter", "chromium.evaluate_timeout", "chromium.event_queue_capacity",
+				"chromium.external_message_pump", "chromium.find_dialog", "chromium.force_windowless_swt",
+				"chromium.headless", "chromium.home", "chromium.init_threads", "chromium.log_file",
+				"chromium.message_pump", "chromium.message_route_threads", "chromium.mmap_threshold",
+				"chromium.multi_threaded_message_loop", "chromium.path", "chromium.proxy_pac_script",
+				"chromium.pump_max_idle", "chromium.remote_debugging_port", "chromium.resize",
+				"chromium.scheme_cache_size", "chromium.setTextAsUrl", "chromium.source_timeout", "chromium.ssl",
+				"chromium.ssl.cert", "chromium.suspend_threads", "chromium.turbolinks", "chromium.virtual_threads",
+				"java.home", "java.specification.vendor", "java.vendor.version", "java.version",
 				"org.eclipse.swt.internal.deviceZoom", "org.eclipse.swt.internal.gtk.theme",
 				"org.eclipse.swt.internal.gtk.version", "os.arch", "os.name", "os.version", "osgi.ws", "sun.desktop",
 				"user.language" };
@@ -451,6 +477,13 @@ public class Engine {
 		return args.toArray(new String[args.size()]);
 	}
 
+	/**
+	 * @return Whether the current thread is the CEF UI thread.
+	 */
+	static boolean isUIThread() {
+		return Thread.currentThread() == uiThread;
+	}
+
 	private static void internalShutdown() {
 		if (app == null) {
 			return;
@@ -459,6 +492,25 @@ public class Engine {
 		app = null;
 	}
 
+	/**
+	 * Makes headless browsers run on the thread of the toolkit. Must be called
+	 * before initializing CEF.
+	 */
+	static void setHeadlessToolkit(CefAppHeadless toolkit) {
+		headlessToolkit = toolkit;
+	}
+
+	/**
+	 * Shuts CEF down, closing all the browsers.
+	 */
+	static void shutdown() {
+		synchronized (Engine.class) {
+			if (!shuttingDown.getAndSet(true)) {
+				internalShutdown();
+			}
+		}
+	}
+
 	public static <T extends CefClient> T createClient() {
 		return app.createClient();
 	}
@@ -494,11 +546,51 @@ public class Engine {
 		}
 	}
 
+	/**
+	 * Groups the registered schemes by length, so that a url is only compared
+	 * with the schemes as long as its own.
+	 */
+	private static String[][] indexSchemes(List<SchemeDomainPair> schemeData) {
+		int maxLength = 0;
+		for (SchemeDomainPair schemeDomain : schemeData) {
+			maxLength = Math.max(maxLength, schemeDomain.getScheme().length());
+		}
+		String[][] schemes = new String[maxLength + 1][0];
+		for (SchemeDomainPair schemeDomain : schemeData) {
+			String scheme = schemeDomain.getScheme();
+			String[] sameLength = schemes[scheme.length()];
+			if (!Arrays.asList(sameLength).contains(scheme)) {
+				sameLength = Arrays.copyOf(sameLength, sameLength.length + 1);
+				sameLength[sameLength.length - 1] = scheme;
+				schemes[scheme.length()] = sameLength;
+			}
+		}
+		return schemes;
+	}
+
+	/**
+	 * @return The CEF message loop iterations per second pumped by the SWT
+	 *         toolkit, or 0 with other toolkits.
+	 */
+	public static int getMessagePumpRate() {
+		CefAppSwt pump = messagePump;
+		return pump == null ? 0 : pump.getPumpRate();
+	}
+
+	/**
+	 * @return The time taken by the CEF message loop iterations pumped by the SWT
+	 *         toolkit.
+	 */
+	public static LatencyHistogram getMessagePumpWorkTime() {
+		return messagePumpWorkTime;
+	}
+
 	public static boolean isRegisteredProtocol(String url) {
-		if (registeredSchemeData != null) {
-			for (SchemeDomainPair schemeDomain : registeredSchemeData) {
-				String scheme = schemeDomain.getScheme();
-				if (url.startsWith(scheme)) {
+		String[][] schemes = registeredSchemesByLength;
+		int length = url.indexOf(':');
+		if (length > 0 && length < schemes.length) {
+			for (String scheme : schemes[length]) {
+				if (url.regionMatches(true, 0, scheme, 0, length)) {
 					return true;
 				}
 			}
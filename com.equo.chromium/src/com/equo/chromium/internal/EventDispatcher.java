@@ -0,0 +1,183 @@
+/****************************************************************************
+**
+** Copyright (C) 2024 Equo
+**
+** This file is part of Equo Chromium.
+**
+** Commercial License Usage
+** Licensees holding valid commercial Equo licenses may use this file in
+** accordance with the commercial license agreement provided with the
+** Software or, alternatively, in accordance with the terms contained in
+** a written agreement between you and Equo. For licensing terms
+** and conditions see https://www.equo.dev/terms.
+**
+** GNU General Public License Usage
+** Alternatively, this file may be used under the terms of the GNU
+** General Public License version 3 as published by the Free Software
+** Foundation. Please review the following
+** information to ensure the GNU General Public License requirements will
+** be met: https://www.gnu.org/licenses/gpl-3.0.html.
+**
+****************************************************************************/
+package com.equo.chromium.internal;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.equo.chromium.utils.BackpressurePolicy;
+import com.equo.chromium.utils.EventType;
+
+/**
+ * Ordered delivery lane for the events of one browser. Deliveries are queued
+ * and drained one at a time on the configured executor, so subscribers observe
+ * events in the order they were fired while the notifying CEF thread returns
+ * immediately. Event types default to {@link BackpressurePolicy#BUFFER}, which
+ * loses no event, and {@link BackpressurePolicy#BLOCK} never blocks the CEF UI
+ * thread: a full queue grows past its capacity there instead. If the executor
+ * rejects a drain, the shared executor drains the queue.
+ */
+class EventDispatcher {
+	private static final int CAPACITY = Integer.getInteger("chromium.event_queue_capacity", 1024);
+	private static final int DRAIN_BATCH = 64;
+	private static final EventType[] TYPES = EventType.values();
+	private static final ExecutorService sharedExecutor = Executors.newFixedThreadPool(
+			Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+				Thread thread = new Thread(r, "chromium-Events");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private final AtomicBoolean dropped = new AtomicBoolean();
+	private final AtomicIntegerArray pending = new AtomicIntegerArray(TYPES.length);
+	private final AtomicReferenceArray<Runnable> latest = new AtomicReferenceArray<>(TYPES.length);
+	private final Semaphore[] permits = new Semaphore[TYPES.length];
+	private final BackpressurePolicy[] policies = new BackpressurePolicy[TYPES.length];
+	private volatile Executor executor = sharedExecutor;
+	private volatile Thread drainer;
+
+	EventDispatcher() {
+		for (int i = 0; i < TYPES.length; i++) {
+			permits[i] = new Semaphore(CAPACITY);
+			policies[i] = BackpressurePolicy.BUFFER;
+		}
+	}
+
+	void setExecutor(Executor executor) {
+		this.executor = executor != null ? executor : sharedExecutor;
+	}
+
+	void setPolicy(EventType eventType, BackpressurePolicy policy) {
+		policies[eventType.ordinal()] = policy != null ? policy : BackpressurePolicy.BUFFER;
+	}
+
+	void dispatch(EventType eventType, Runnable delivery) {
+		int type = eventType.ordinal();
+		switch (policies[type]) {
+		case BUFFER:
+			enqueue(delivery);
+			return;
+		case COALESCE:
+			if (latest.getAndSet(type, delivery) == null) {
+				enqueue(() -> {
+					Runnable last = latest.getAndSet(type, null);
+					if (last != null) {
+						last.run();
+					}
+				});
+			}
+			return;
+		case DROP:
+			if (pending.incrementAndGet(type) > CAPACITY) {
+				pending.decrementAndGet(type);
+				if (dropped.compareAndSet(false, true)) {
+					System.err.println("Warning: dropping " + eventType
+							+ " events, the subscribers of the browser are behind. Further drops are not logged.");
+				} else {
+					Engine.debug("Dropping " + eventType + " event, subscribers are behind");
+				}
+				return;
+			}
+			enqueue(() -> {
+				try {
+					delivery.run();
+				} finally {
+					pending.decrementAndGet(type);
+				}
+			});
+			return;
+		default:
+			// A subscriber that fires events from within the lane must not wait on itself,
+			// and the CEF UI thread must not wait on subscribers.
+			if (Thread.currentThread() == drainer || Engine.isUIThread()) {
+				if (!permits[type].tryAcquire()) {
+					enqueue(delivery);
+					return;
+				}
+			} else {
+				permits[type].acquireUninterruptibly();
+			}
+			enqueue(() -> {
+				try {
+					delivery.run();
+				} finally {
+					permits[type].release();
+				}
+			});
+		}
+	}
+
+	private void enqueue(Runnable task) {
+		queue.add(task);
+		schedule();
+	}
+
+	private void schedule() {
+		if (scheduled.compareAndSet(false, true)) {
+			Executor executor = this.executor;
+			try {
+				executor.execute(this::drain);
+			} catch (RejectedExecutionException e) {
+				Engine.debug("Event executor rejected delivery: " + e.getMessage());
+				if (executor == sharedExecutor) {
+					scheduled.set(false);
+					return;
+				}
+				try {
+					sharedExecutor.execute(this::drain);
+				} catch (RejectedExecutionException e2) {
+					scheduled.set(false);
+				}
+			}
+		}
+	}
+
+	private void drain() {
+		drainer = Thread.currentThread();
+		try {
+			Runnable task;
+			for (int i = 0; i < DRAIN_BATCH && (task = queue.poll()) != null; i++) {
+				try {
+					task.run();
+				} catch (Throwable t) {
+					t.printStackTrace();
+				}
+			}
+		} finally {
+			drainer = null;
+			scheduled.set(false);
+			if (!queue.isEmpty()) {
+				schedule();
+			}
+		}
+	}
+}
@@ -0,0 +1,225 @@
+/****************************************************************************
+**
+** Copyright (C) 2024 Equo
+**
+** This file is part of Equo Chromium.
+**
+** Commercial License Usage
+** Licensees holding valid commercial Equo licenses may use this file in
+** accordance with the commercial license agreement provided with the
+** Software or, alternatively, in accordance with the terms contained in
+** a written agreement between you and Equo. For licensing terms
+** and conditions see https://www.equo.dev/terms.
+**
+** GNU General Public License Usage
+** Alternatively, this file may be used under the terms of the GNU
+** General Public License version 3 as published by the Free Software
+** Foundation. Please review the following
+** information to ensure the GNU General Public License requirements will
+** be met: https://www.gnu.org/licenses/gpl-3.0.html.
+**
+****************************************************************************/
+package com.equo.chromium.internal;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import org.cef.browser.CefBrowser;
+import org.cef.browser.CefPaintEvent;
+import org.cef.misc.Rectangle;
+
+/**
+ * Stream of the frames painted by a windowless browser. Only the dirty regions
+ * of each paint are copied into a pair of off-heap BGRA buffers, and the
+ * listeners receive the most recent complete frame on a separate thread with
+ * the regions changed since the previous frame they received. Frames painted
+ * while the listeners are busy are merged into the next delivery.
+ */
+final class FrameStream implements Consumer<CefPaintEvent> {
+	private static final int MAX_RECTS = 32;
+	private static final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+		Thread thread = new Thread(r, "chromium-Frames");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private static class FrameBuffer {
+		ByteBuffer data;
+		List<Rectangle> missing = new ArrayList<>();
+		boolean missingAll = true;
+	}
+
+	private final CefBrowser browser;
+	private final List<Consumer<CefPaintEvent>> listeners = new CopyOnWriteArrayList<>();
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private final Object lock = new Object();
+	private FrameBuffer back = new FrameBuffer();
+	private FrameBuffer front = new FrameBuffer();
+	private final List<Rectangle> changed = new ArrayList<>();
+	private boolean changedAll;
+	private boolean ready;
+	private int width;
+	private int height;
+
+	FrameStream(CefBrowser browser) {
+		this.browser = browser;
+	}
+
+	void addListener(Consumer<CefPaintEvent> listener) {
+		if (listeners.isEmpty()) {
+			// paints are not copied while nobody listens
+			synchronized (lock) {
+				back.missingAll = front.missingAll = changedAll = true;
+			}
+		}
+		listeners.add(listener);
+	}
+
+	void removeListener(Consumer<CefPaintEvent> listener) {
+		listeners.remove(listener);
+	}
+
+	@Override
+	public void accept(CefPaintEvent event) {
+		if (event.getPopup() || listeners.isEmpty()) {
+			return;
+		}
+		int w = event.getWidth();
+		int h = event.getHeight();
+		synchronized (lock) {
+			if (w != width || h != height) {
+				width = w;
+				height = h;
+				back.missingAll = front.missingAll = changedAll = true;
+			}
+			int size = w * h * 4;
+			if (back.data == null || back.data.capacity() < size) {
+				back.data = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+				back.missingAll = true;
+			}
+			ByteBuffer source = event.getRenderedFrame();
+			if (back.missingAll) {
+				copy(source, back.data, new Rectangle(0, 0, w, h));
+			} else {
+				for (Rectangle rect : back.missing) {
+					copy(source, back.data, rect);
+				}
+				for (Rectangle rect : event.getDirtyRects()) {
+					copy(source, back.data, rect);
+				}
+			}
+			back.missing.clear();
+			back.missingAll = false;
+			for (Rectangle rect : event.getDirtyRects()) {
+				if (!front.missingAll && !addRect(front.missing, rect)) {
+					front.missingAll = true;
+				}
+				if (!changedAll && !addRect(changed, rect)) {
+					changedAll = true;
+				}
+			}
+			ready = true;
+		}
+		schedule();
+	}
+
+	private boolean addRect(List<Rectangle> rects, Rectangle rect) {
+		if (rects.size() >= MAX_RECTS) {
+			rects.clear();
+			return false;
+		}
+		rects.add(rect.clone());
+		return true;
+	}
+
+	private void copy(ByteBuffer source, ByteBuffer target, Rectangle rect) {
+		int x = Math.max(0, rect.x);
+		int y = Math.max(0, rect.y);
+		int right = Math.min(width, rect.x + rect.width);
+		int bottom = Math.min(height, rect.y + rect.height);
+		if (right <= x || bottom <= y) {
+			return;
+		}
+		copyRegion(source, target, width, x, y, right, bottom);
+	}
+
+	/**
+	 * Copies a region between two BGRA frames of the same width, from column x to
+	 * right and from row y to bottom, excluded.
+	 */
+	private static void copyRegion(ByteBuffer source, ByteBuffer target, int width, int x, int y, int right,
+			int bottom) {
+		ByteBuffer src = source.duplicate();
+		ByteBuffer dst = target.duplicate();
+		int stride = width * 4;
+		if (x == 0 && right == width) {
+			// whole rows are contiguous
+			src.limit(bottom * stride);
+			src.position(y * stride);
+			dst.position(y * stride);
+			dst.put(src);
+			return;
+		}
+		int length = (right - x) * 4;
+		for (int row = y; row < bottom; row++) {
+			int offset = row * stride + x * 4;
+			src.limit(offset + length);
+			src.position(offset);
+			dst.position(offset);
+			dst.put(src);
+			src.clear();
+		}
+	}
+
+	private void schedule() {
+		if (scheduled.compareAndSet(false, true)) {
+			executor.execute(this::deliver);
+		}
+	}
+
+	private void deliver() {
+		boolean again;
+		try {
+			CefPaintEvent frame;
+			synchronized (lock) {
+				if (!ready) {
+					return;
+				}
+				FrameBuffer delivered = back;
+				back = front;
+				front = delivered;
+				ready = false;
+				Rectangle[] rects = changedAll ? new Rectangle[] { new Rectangle(0, 0, width, height) }
+						: changed.toArray(new Rectangle[changed.size()]);
+				changed.clear();
+				changedAll = false;
+				ByteBuffer data = front.data.duplicate();
+				data.limit(width * height * 4);
+				frame = new CefPaintEvent(browser, false, rects, data.asReadOnlyBuffer().order(ByteOrder.nativeOrder()),
+						width, height);
+			}
+			for (Consumer<CefPaintEvent> listener : listeners) {
+				try {
+					listener.accept(frame);
+				} catch (Throwable t) {
+					t.printStackTrace();
+				}
+			}
+		} finally {
+			scheduled.set(false);
+			synchronized (lock) {
+				again = ready;
+			}
+		}
+		if (again) {
+			schedule();
+		}
+	}
+}
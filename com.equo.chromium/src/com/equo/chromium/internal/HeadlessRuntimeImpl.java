@@ -0,0 +1,190 @@
+/****************************************************************************
+**
+** Copyright (C) 2024 Equo
+**
+** This file is part of Equo Chromium.
+**
+** Commercial License Usage
+** Licensees holding valid commercial Equo licenses may use this file in
+** accordance with the commercial license agreement provided with the
+** Software or, alternatively, in accordance with the terms contained in
+** a written agreement between you and Equo. For licensing terms
+** and conditions see https://www.equo.dev/terms.
+**
+** GNU General Public License Usage
+** Alternatively, this file may be used under the terms of the GNU
+** General Public License version 3 as published by the Free Software
+** Foundation. Please review the following
+** information to ensure the GNU General Public License requirements will
+** be met: https://www.gnu.org/licenses/gpl-3.0.html.
+**
+****************************************************************************/
+package com.equo.chromium.internal;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.cef.CefAppHeadless;
+import org.cef.misc.Rectangle;
+
+import com.equo.chromium.ChromiumBrowser;
+import com.equo.chromium.HeadlessRuntime;
+import com.equo.chromium.internal.Engine.BrowserType;
+
+public final class HeadlessRuntimeImpl implements HeadlessRuntime {
+	private static HeadlessRuntimeImpl instance;
+	// Thread-safe calls that run on the caller thread
+	private static final Set<String> DIRECT_METHODS = new HashSet<>(Arrays.asList("subscribe", "unSubscribe",
+			"unSubscribeAll", "setEventExecutor", "setEventBackpressure"));
+
+	private final CefAppHeadless toolkit = new CefAppHeadless();
+
+	public static synchronized HeadlessRuntime get() {
+		if (instance == null) {
+			if (Engine.browserTypeInitialized != null) {
+				throw new IllegalStateException("Browsers of type " + Engine.browserTypeInitialized
+						+ " are already initialized without the headless runtime.");
+			}
+			instance = new HeadlessRuntimeImpl();
+		} else if (instance.toolkit.getTermination().isDone()) {
+			throw new IllegalStateException("The headless runtime was shut down.");
+		}
+		return instance;
+	}
+
+	private HeadlessRuntimeImpl() {
+		Engine.setHeadlessToolkit(toolkit);
+		// Reserve the toolkit before CEF starts initializing on the runtime thread
+		Engine.browserTypeInitialized = BrowserType.HEADLESS;
+		toolkit.start();
+		toolkit.execute(() -> Engine.initCEF(BrowserType.HEADLESS));
+	}
+
+	@Override
+	public CompletableFuture<ChromiumBrowser> windowless(String url) {
+		return submit(() -> proxy(new Windowless(url)));
+	}
+
+	@Override
+	public CompletableFuture<ChromiumBrowser> windowless(String url, int x, int y, int width, int height) {
+		return submit(() -> proxy(new Windowless(url, new Rectangle(x, y, width, height))));
+	}
+
+	@Override
+	public <T> CompletableFuture<T> submit(Callable<T> task) {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		toolkit.execute(() -> {
+			try {
+				result.complete(task.call());
+			} catch (Throwable t) {
+				result.completeExceptionally(t);
+			}
+		});
+		return result;
+	}
+
+	@Override
+	public boolean isRuntimeThread() {
+		return toolkit.isEDT();
+	}
+
+	@Override
+	public CompletableFuture<Void> shutdown() {
+		toolkit.execute(Engine::shutdown);
+		return toolkit.getTermination();
+	}
+
+	/**
+	 * Wraps a browser so its calls from other threads run on the runtime thread.
+	 */
+	private ChromiumBrowser proxy(ChromiumBrowser browser) {
+		return (ChromiumBrowser) Proxy.newProxyInstance(ChromiumBrowser.class.getClassLoader(),
+				new Class<?>[] { ChromiumBrowser.class }, new BrowserHandler(browser));
+	}
+
+	/**
+	 * Calls without result are queued and their failure is thrown by the next
+	 * call. Calls returning a future return one completed with the future of the
+	 * browser, and other calls wait for their result, which is refused on the CEF
+	 * UI thread since the runtime thread may be waiting on it.
+	 */
+	private class BrowserHandler implements InvocationHandler {
+		private final ChromiumBrowser browser;
+		private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		BrowserHandler(ChromiumBrowser browser) {
+			this.browser = browser;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getDeclaringClass() == Object.class) {
+				switch (method.getName()) {
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				default:
+					return "HeadlessBrowser[" + browser + "]";
+				}
+			}
+			Throwable failed = failure.getAndSet(null);
+			if (failed != null) {
+				throw new IllegalStateException("A previous call to the browser failed", failed);
+			}
+			if (toolkit.isEDT() || DIRECT_METHODS.contains(method.getName())) {
+				return HeadlessRuntimeImpl.invoke(browser, method, args);
+			}
+			Class<?> returnType = method.getReturnType();
+			if (returnType == void.class) {
+				toolkit.execute(() -> {
+					try {
+						HeadlessRuntimeImpl.invoke(browser, method, args);
+					} catch (Throwable t) {
+						Throwable previous = failure.getAndUpdate(current -> current != null ? current : t);
+						if (previous != null) {
+							previous.addSuppressed(t);
+						}
+					}
+				});
+				return null;
+			}
+			if (returnType != Object.class && returnType.isAssignableFrom(CompletableFuture.class)) {
+				return submit(() -> HeadlessRuntimeImpl.invoke(browser, method, args))
+						.thenCompose(result -> result == null ? CompletableFuture.completedFuture(null)
+								: ((CompletionStage<?>) result));
+			}
+			if (Engine.isUIThread()) {
+				throw new IllegalStateException(
+						"Can't wait for " + method.getName() + " on the CEF UI thread, call it from another thread");
+			}
+			try {
+				return submit(() -> HeadlessRuntimeImpl.invoke(browser, method, args)).get();
+			} catch (ExecutionException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+	private static Object invoke(ChromiumBrowser browser, Method method, Object[] args) throws Exception {
+		try {
+			return method.invoke(browser, args);
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw (Error) cause;
+		}
+	}
+}
@@ -26,6 +26,7 @@ package com.equo.chromium.internal;
 import static com.equo.chromium.internal.Engine.debug;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -35,8 +36,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import org.cef.CefClient;
@@ -45,10 +47,10 @@ import org.cef.browser.CefBrowser;
 import org.cef.browser.CefFrame;
 import org.cef.browser.CefMessageRouter;
 import org.cef.browser.CefMessageRouter.CefMessageRouterConfig;
+import org.cef.browser.CefPaintEvent;
 import org.cef.browser.CefRequestContext;
 import org.cef.callback.CefCallback;
 import org.cef.callback.CefCompletionCallback;
-import org.cef.callback.CefDevToolsMessageObserverAdapter;
 import org.cef.callback.CefPdfPrintCallback;
 import org.cef.callback.CefQueryCallback;
 import org.cef.callback.CefStringVisitor;
@@ -71,9 +73,12 @@ import com.equo.chromium.internal.Engine.BrowserType;
 import com.equo.chromium.swt.internal.spi.CommRouterHandler;
 import com.equo.chromium.swt.internal.spi.CommunicationManager;
 import com.equo.chromium.swt.internal.spi.ScriptExtension;
+import com.equo.chromium.utils.BackpressurePolicy;
 import com.equo.chromium.utils.EventAction;
+import com.equo.chromium.utils.EventListener;
 import com.equo.chromium.utils.EventType;
 import com.equo.chromium.utils.PdfPrintSettings;
+import com.equo.chromium.utils.ScreenshotSettings;
 import com.equo.chromium.utils.StorageType;
 import com.github.cliftonlabs.json_simple.JsonException;
 import com.github.cliftonlabs.json_simple.JsonObject;
@@ -90,13 +95,9 @@ public abstract class IndependentBrowser implements ChromiumBrowser {
 	private static final String DATA_TEXT_URL = "data:text/html;base64,";
 	private Storage localStorage;
 	private Storage sessionStorage;
-	private static ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
-		Thread thread = new Thread(r, "chromium-MessageRoute");
-		thread.setDaemon(true);
-		return thread;
-	});
-	private int messageId = 0;
+	private final MessageRouteExecutor messageRoutes = new MessageRouteExecutor();
 	private volatile Subscriber subscriber = null;
+	private volatile DevToolsSession devToolsSession = null;
 
 	public Subscriber getSubscriber() {
 		if (subscriber == null) {
@@ -109,6 +110,21 @@ public abstract class IndependentBrowser implements ChromiumBrowser {
 		return subscriber;
 	}
 
+	/**
+	 * Returns the DevTools protocol session shared by every DevTools call of this
+	 * browser. Must be called once the browser has been created.
+	 */
+	public DevToolsSession getDevToolsSession() {
+		if (devToolsSession == null) {
+			synchronized (this) {
+				if (devToolsSession == null) {
+					devToolsSession = new DevToolsSession(getBrowser());
+				}
+			}
+		}
+		return devToolsSession;
+	}
+
 	@Override
 	public CompletableFuture<Boolean> isCreated() {
 		return created;
@@ -137,6 +153,11 @@ public abstract class IndependentBrowser implements ChromiumBrowser {
 			public void onAfterCreated(CefBrowser browser) {
 				getSubscriber().onAfterCreatedNotify(browser);
 			}
+
+			@Override
+			public void onBeforeClose(CefBrowser browser) {
+				getSubscriber().onBeforeCloseNotify();
+			}
 		});
 		clientHandler.addRequestHandler(new CefRequestHandlerAdapter() 
 		{
@@ -175,7 +196,7 @@ public abstract class IndependentBrowser implements ChromiumBrowser {
 
 			@Override
 			public void onLoadStart(CefBrowser browser, CefFrame frame, TransitionType transitionType) {
-				getSubscriber().onLoadStartNotify();
+				getSubscriber().onLoadStartNotify(frame);
 			}
 			
 			@Override
@@ -210,6 +231,9 @@ public abstract class IndependentBrowser implements ChromiumBrowser {
 			CefMessageRouter commRouter = CommRouterHandler.createRouter();
 			commRouter.addHandler(new CommRouterHandler(commManager), true);
 			clientHandler.addMessageRouter(commRouter);
+			if (!Boolean.getBoolean(ScriptExtension.DISABLE_SCRIPT_EXTENSIONS_PROPERTY)) {
+				CommRouterHandler.createScriptExtensions().forEach(clientHandler::addMessageRouter);
+			}
 		}
 
 		if (!Boolean.getBoolean(ScriptExtension.DISABLE_SCRIPT_EXTENSIONS_PROPERTY)) {
@@ -230,6 +254,10 @@ public abstract class IndependentBrowser implements ChromiumBrowser {
 		return getSubscriber().subscribe(eventType, action);
 	}
 
+	public long subscribe(EventType eventType, EventListener listener) {
+		return getSubscriber().subscribe(eventType, listener);
+	}
+
 	public boolean unSubscribe(long idEvent) {
 		return getSubscriber().unSubscribe(idEvent);
 	}
@@ -238,6 +266,14 @@ public abstract class IndependentBrowser implements ChromiumBrowser {
 		getSubscriber().unSubscribeAll();
 	}
 
+	public void setEventExecutor(Executor executor) {
+		getSubscriber().setExecutor(executor);
+	}
+
+	public void setEventBackpressure(EventType eventType, BackpressurePolicy policy) {
+		getSubscriber().setBackpressurePolicy(eventType, policy);
+	}
+
 	protected CefRequestContext createRequestContext() {
 		requestContext = isIgnoreCertificateErrors() ? CefRequestContext.createContext(null) : null;
 		return requestContext;
@@ -354,39 +390,69 @@ public abstract class IndependentBrowser implements ChromiumBrowser {
 
 	@Override
 	public CompletableFuture<byte[]> captureScreenshot(int x, int y, int width, int height, int scale) {
-		CompletableFuture<byte[]> screenshotResult = new CompletableFuture<>();
-		new CefDevToolsMessageObserverAdapter(getBrowser()) {
-			@Override
-			public void onDevToolsMethodResult(CefBrowser cefBrowser, int messageId, boolean success, String result,
-					int resultSize) {
-				try {
-					JsonObject json = (JsonObject) Jsoner.deserialize(result);
-					screenshotResult.complete(
-							(byte[]) ((String) json.getOrDefault("data", "")).getBytes(StandardCharsets.UTF_8));
-				} catch (JsonException e) {
-					screenshotResult.complete("".getBytes(StandardCharsets.UTF_8));
-				} finally {
-					dispose();
-				}
+		ScreenshotSettings settings = new ScreenshotSettings();
+		settings.x = x;
+		settings.y = y;
+		settings.width = width;
+		settings.height = height;
+		settings.scale = scale;
+		return executeScreenshot(settings).handle((result, e) -> {
+					if (e == null) {
+						try {
+							JsonObject json = (JsonObject) Jsoner.deserialize(result);
+							return ((String) json.getOrDefault("data", "")).getBytes(StandardCharsets.UTF_8);
+						} catch (JsonException ex) {
+						}
+					}
+					return "".getBytes(StandardCharsets.UTF_8);
+				});
+	}
+
+	@Override
+	public CompletableFuture<byte[]> captureScreenshot(ScreenshotSettings settings) {
+		return ScreenshotDecoder.decode(executeScreenshot(settings));
+	}
+
+	@Override
+	public CompletableFuture<Void> captureScreenshot(ScreenshotSettings settings, Consumer<ByteBuffer> consumer) {
+		return ScreenshotDecoder.decode(executeScreenshot(settings), consumer);
+	}
+
+	private CompletableFuture<String> executeScreenshot(ScreenshotSettings settings) {
+		JsonObject params = createScreenshotParams(settings);
+		return created.thenCompose(c -> getDevToolsSession().execute("Page.captureScreenshot", params));
+	}
+
+	private JsonObject createScreenshotParams(ScreenshotSettings settings) {
+		JsonObject params = new JsonObject();
+		if (settings == null) {
+			return params;
+		}
+		if (settings.format != null && settings.format != ScreenshotSettings.Format.PNG) {
+			params.put("format", settings.format.name().toLowerCase());
+			if (settings.quality >= 0) {
+				params.put("quality", Math.min(settings.quality, 100));
 			}
-		};
-		JsonObject jsonMessage = new JsonObject();
-		jsonMessage.put("id", messageId++);
-		jsonMessage.put("method", "Page.captureScreenshot");
-		JsonObject clip = new JsonObject();
-		if (width > 0 && height > 0) {
+		}
+		if (settings.width > 0 && settings.height > 0) {
 			JsonObject viewport = new JsonObject();
-			viewport.put("x", x);
-			viewport.put("y", y);
-			viewport.put("width", width);
-			viewport.put("height", height);
-			viewport.put("scale", scale);
-			clip.put("clip", viewport);
-			jsonMessage.put("params", clip);
+			viewport.put("x", settings.x);
+			viewport.put("y", settings.y);
+			viewport.put("width", settings.width);
+			viewport.put("height", settings.height);
+			viewport.put("scale", settings.scale);
+			params.put("clip", viewport);
+		}
+		if (!settings.from_surface) {
+			params.put("fromSurface", false);
+		}
+		if (settings.capture_beyond_viewport) {
+			params.put("captureBeyondViewport", true);
+		}
+		if (settings.optimize_for_speed) {
+			params.put("optimizeForSpeed", true);
 		}
-		String message = jsonMessage.toJson();
-		getBrowser().sendDevToolsMessage(message, message.length());
-		return screenshotResult;
+		return params;
 	}
 
 	@Override
@@ -418,6 +484,9 @@ public abstract class IndependentBrowser implements ChromiumBrowser {
 
 	@Override
 	public boolean close() {
+		if (devToolsSession != null) {
+			devToolsSession.dispose();
+		}
 		CefBrowser browser = getBrowser();
 		if (browser != null) {
 			browser.setCloseAllowed();
@@ -429,7 +498,7 @@ public abstract class IndependentBrowser implements ChromiumBrowser {
 			}
 		}
 		unSubscribeAll();
-		executor.shutdown();
+		messageRoutes.dispose();
 		return true;
 	}
 
@@ -438,6 +507,21 @@ public abstract class IndependentBrowser implements ChromiumBrowser {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public void addFrameListener(Consumer<CefPaintEvent> listener) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void removeFrameListener(Consumer<CefPaintEvent> listener) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void setFrameRate(int frameRate) {
+		throw new UnsupportedOperationException();
+	}
+
 	@Override
 	public boolean isLoading() {
 		return getBrowser().isLoading();
@@ -492,34 +576,16 @@ public abstract class IndependentBrowser implements ChromiumBrowser {
 	}
 
 	public CompletableFuture<Object> sendDevToolsMessage(String devToolsMethod, List<Map.Entry<String, Object>> params, String wanted) {
-		CompletableFuture<Object> messageResult = new CompletableFuture<>();
-		created.thenRun(() -> {
-			int id = messageId++;
-			new CefDevToolsMessageObserverAdapter(getBrowser()) {
-				@Override
-				public void onDevToolsMethodResult(CefBrowser cefBrowser, int messageId, boolean success, String result, int resultSize) {
-					debugPrint("onDevToolsMethodResult: " +result);
-					if (id != messageId) {
-						return;
-					}
+		return created.thenCompose(c -> getDevToolsSession().execute(devToolsMethod, createJsonObject(params)))
+				.thenApply(result -> {
+					debugPrint("onDevToolsMethodResult: " + result);
 					try {
 						JsonObject json = (JsonObject) Jsoner.deserialize(result);
-						messageResult.complete(wanted == null || wanted.isEmpty() ? json : json.get(wanted));
+						return wanted == null || wanted.isEmpty() ? json : json.get(wanted);
 					} catch (JsonException e) {
-						messageResult.completeExceptionally(e.getCause());
-					} finally {
-						dispose();
+						throw new CompletionException(e.getCause());
 					}
-				}
-			};
-			JsonObject jsonMessage = new JsonObject();
-			jsonMessage.put("id", id);
-			jsonMessage.put("method", devToolsMethod);
-			jsonMessage.put("params", createJsonObject(params));
-			String devToolsMessage = jsonMessage.toJson();
-			getBrowser().sendDevToolsMessage(devToolsMessage, devToolsMessage.length());
-		});
-		return messageResult;
+				});
 	}
 
 	private JsonObject createJsonObject(List<Map.Entry<String, Object>> params) {
@@ -543,6 +609,20 @@ public abstract class IndependentBrowser implements ChromiumBrowser {
 
 	public void addMessageRoute(String queryFunctionName, String cancelQueryFunctionName,
 			Function<String, String> result) {
+		addMessageRoute(queryFunctionName, cancelQueryFunctionName, result, 1);
+	}
+
+	/**
+	 * Adds a javascript query function whose queries are answered by result
+	 * outside of the CEF threads.
+	 * 
+	 * @param concurrency The maximum number of queries to this route answered at
+	 *                    once. With 1, queries are answered one after the other
+	 *                    in the order they were sent.
+	 */
+	public void addMessageRoute(String queryFunctionName, String cancelQueryFunctionName,
+			Function<String, String> result, int concurrency) {
+		MessageRouteExecutor.Lane lane = messageRoutes.createLane(result, concurrency);
 		isCreated().thenRun(() -> {
 			CefMessageRouterConfig config = new CefMessageRouterConfig(queryFunctionName, cancelQueryFunctionName);
 			CefMessageRouter messageRouter_ = CefMessageRouter.create(config);
@@ -550,13 +630,8 @@ public abstract class IndependentBrowser implements ChromiumBrowser {
 				@Override
 				public boolean onQuery(CefBrowser browser, CefFrame frame, long queryId, String request, boolean persistent,
 						CefQueryCallback callback) {
-					try {
-						executor.submit(() -> callback.success(result.apply(request)));
-						return true;
-					} catch (Exception e) {
-						e.printStackTrace();
-					}
-					return false;
+					lane.submit(request, callback);
+					return true;
 				}
 
 			};
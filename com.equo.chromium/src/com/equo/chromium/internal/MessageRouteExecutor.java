@@ -0,0 +1,149 @@
+/****************************************************************************
+**
+** Copyright (C) 2024 Equo
+**
+** This file is part of Equo Chromium.
+**
+** Commercial License Usage
+** Licensees holding valid commercial Equo licenses may use this file in
+** accordance with the commercial license agreement provided with the
+** Software or, alternatively, in accordance with the terms contained in
+** a written agreement between you and Equo. For licensing terms
+** and conditions see https://www.equo.dev/terms.
+**
+** GNU General Public License Usage
+** Alternatively, this file may be used under the terms of the GNU
+** General Public License version 3 as published by the Free Software
+** Foundation. Please review the following
+** information to ensure the GNU General Public License requirements will
+** be met: https://www.gnu.org/licenses/gpl-3.0.html.
+**
+****************************************************************************/
+package com.equo.chromium.internal;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.cef.callback.CefQueryCallback;
+
+/**
+ * Runs the queries of the message routes of a browser on a pool shared by all
+ * browsers. Each route is a lane that starts its queries in arrival order and
+ * runs at most its concurrency of them at once, so a slow route only delays
+ * its own queries.
+ */
+final class MessageRouteExecutor {
+	private static final int DRAIN_BATCH = 16;
+	private static final int THREADS = Integer.getInteger("chromium.message_route_threads",
+			Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+	private static final ExecutorService pool = ThreadPools.newWorkerPool("chromium-MessageRoute", THREADS);
+
+	private final Set<Lane> lanes = ConcurrentHashMap.newKeySet();
+	private volatile boolean disposed;
+
+	private static class Query {
+		final String request;
+		final CefQueryCallback callback;
+
+		Query(String request, CefQueryCallback callback) {
+			this.request = request;
+			this.callback = callback;
+		}
+	}
+
+	final class Lane {
+		private final Function<String, String> function;
+		private final int concurrency;
+		private final Queue<Query> queue = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger running = new AtomicInteger();
+
+		private Lane(Function<String, String> function, int concurrency) {
+			this.function = function;
+			this.concurrency = concurrency;
+		}
+
+		void submit(String request, CefQueryCallback callback) {
+			if (disposed) {
+				callback.failure(-1, "Browser closed");
+				return;
+			}
+			queue.add(new Query(request, callback));
+			schedule();
+		}
+
+		private void schedule() {
+			while (!queue.isEmpty() && !disposed) {
+				int current = running.get();
+				if (current >= concurrency) {
+					return;
+				}
+				if (running.compareAndSet(current, current + 1)) {
+					pool.execute(this::drain);
+				}
+			}
+		}
+
+		private void drain() {
+			try {
+				Query query;
+				for (int i = 0; i < DRAIN_BATCH && !disposed && (query = queue.poll()) != null; i++) {
+					run(query);
+				}
+			} finally {
+				running.decrementAndGet();
+			}
+			schedule();
+		}
+
+		private void run(Query query) {
+			String result;
+			try {
+				result = function.apply(query.request);
+			} catch (Throwable t) {
+				t.printStackTrace();
+				query.callback.failure(-1, t.toString());
+				return;
+			}
+			query.callback.success(result);
+		}
+
+		private void cancel() {
+			Query query;
+			while ((query = queue.poll()) != null) {
+				query.callback.failure(-1, "Browser closed");
+			}
+		}
+	}
+
+	/**
+	 * @param function    Computes the response of each query.
+	 * @param concurrency The maximum number of queries of the route running at
+	 *                    once. With 1 queries run one after the other in arrival
+	 *                    order.
+	 */
+	Lane createLane(Function<String, String> function, int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("concurrency must be at least 1");
+		}
+		Lane lane = new Lane(function, concurrency);
+		lanes.add(lane);
+		return lane;
+	}
+
+	/**
+	 * Fails the queued queries of all the lanes and rejects new ones. Queries
+	 * already running complete normally.
+	 */
+	void dispose() {
+		disposed = true;
+		for (Lane lane : lanes) {
+			lane.cancel();
+		}
+		lanes.clear();
+	}
+}
@@ -0,0 +1,133 @@
+/****************************************************************************
+**
+** Copyright (C) 2024 Equo
+**
+** This file is part of Equo Chromium.
+**
+** Commercial License Usage
+** Licensees holding valid commercial Equo licenses may use this file in
+** accordance with the commercial license agreement provided with the
+** Software or, alternatively, in accordance with the terms contained in
+** a written agreement between you and Equo. For licensing terms
+** and conditions see https://www.equo.dev/terms.
+**
+** GNU General Public License Usage
+** Alternatively, this file may be used under the terms of the GNU
+** General Public License version 3 as published by the Free Software
+** Foundation. Please review the following
+** information to ensure the GNU General Public License requirements will
+** be met: https://www.gnu.org/licenses/gpl-3.0.html.
+**
+****************************************************************************/
+package com.equo.chromium.internal;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Decodes the base64 "data" field of Page.captureScreenshot results straight
+ * from the JSON string, without parsing the result or extracting the field.
+ * Decoding runs on a dedicated pool and reuses its buffers.
+ */
+final class ScreenshotDecoder {
+	private static final String DATA_FIELD = "\"data\"";
+	private static final int POOLED_BUFFERS = 8;
+	private static final byte[] DECODE = new byte[128];
+	static {
+		Arrays.fill(DECODE, (byte) -1);
+		String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+		for (int i = 0; i < alphabet.length(); i++) {
+			DECODE[alphabet.charAt(i)] = (byte) i;
+		}
+	}
+	private static final ExecutorService executor = Executors.newFixedThreadPool(2, r -> {
+		Thread thread = new Thread(r, "chromium-Screenshot");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private static final BlockingQueue<ByteBuffer> buffers = new ArrayBlockingQueue<>(POOLED_BUFFERS);
+
+	private ScreenshotDecoder() {
+	}
+
+	static CompletableFuture<byte[]> decode(CompletableFuture<String> result) {
+		return result.thenApplyAsync(json -> {
+			int[] range = dataRange(json);
+			int padding = 0;
+			for (int i = range[1] - 1; i >= range[0] && json.charAt(i) == '='; i--) {
+				padding++;
+			}
+			byte[] image = new byte[(range[1] - range[0] - padding) * 6 / 8];
+			int length = decode(json, range[0], range[1], image);
+			return length == image.length ? image : Arrays.copyOf(image, length);
+		}, executor);
+	}
+
+	static CompletableFuture<Void> decode(CompletableFuture<String> result, Consumer<ByteBuffer> consumer) {
+		return result.thenAcceptAsync(json -> {
+			int[] range = dataRange(json);
+			ByteBuffer buffer = acquire((range[1] - range[0] + 3) / 4 * 3);
+			try {
+				buffer.limit(decode(json, range[0], range[1], buffer.array()));
+				consumer.accept(buffer);
+			} finally {
+				buffers.offer(buffer);
+			}
+		}, executor);
+	}
+
+	private static ByteBuffer acquire(int size) {
+		ByteBuffer buffer = buffers.poll();
+		if (buffer == null || buffer.capacity() < size) {
+			buffer = ByteBuffer.allocate(size);
+		}
+		buffer.clear();
+		return buffer;
+	}
+
+	private static int[] dataRange(String json) {
+		int field = json.indexOf(DATA_FIELD);
+		int colon = field < 0 ? -1 : json.indexOf(':', field + DATA_FIELD.length());
+		int start = colon < 0 ? -1 : json.indexOf('"', colon + 1);
+		int end = start < 0 ? -1 : json.indexOf('"', start + 1);
+		if (end < 0) {
+			throw new IllegalStateException("Screenshot result without data");
+		}
+		return new int[] { start + 1, end };
+	}
+
+	private static int decode(String src, int start, int end, byte[] out) {
+		int bits = 0;
+		int count = 0;
+		int pos = 0;
+		for (int i = start; i < end; i++) {
+			char c = src.charAt(i);
+			int value = c < DECODE.length ? DECODE[c] : -1;
+			if (value < 0) {
+				// padding or JSON escapes
+				continue;
+			}
+			bits = (bits << 6) | value;
+			if (++count == 4) {
+				out[pos++] = (byte) (bits >> 16);
+				out[pos++] = (byte) (bits >> 8);
+				out[pos++] = (byte) bits;
+				bits = 0;
+				count = 0;
+			}
+		}
+		if (count == 3) {
+			out[pos++] = (byte) (bits >> 10);
+			out[pos++] = (byte) (bits >> 2);
+		} else if (count == 2) {
+			out[pos++] = (byte) (bits >> 4);
+		}
+		return pos;
+	}
+}
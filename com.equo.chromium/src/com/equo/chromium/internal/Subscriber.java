@@ -21,11 +21,18 @@
 ****************************************************************************/
 package com.equo.chromium.internal;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.cef.CefSettings.LogSeverity;
 import org.cef.browser.CefBrowser;
@@ -33,23 +40,44 @@ import org.cef.browser.CefFrame;
 import org.cef.callback.CefStringVisitor;
 
 import com.equo.chromium.ChromiumBrowser;
+import com.equo.chromium.utils.AfterCreatedEvent;
+import com.equo.chromium.utils.BackpressurePolicy;
+import com.equo.chromium.utils.ConsoleMessageEvent;
+import com.equo.chromium.utils.Event;
 import com.equo.chromium.utils.EventAction;
+import com.equo.chromium.utils.EventListener;
 import com.equo.chromium.utils.EventType;
+import com.equo.chromium.utils.FindResultEvent;
+import com.equo.chromium.utils.LoadEndEvent;
+import com.equo.chromium.utils.NavigationEvent;
 
 public class Subscriber {
+	private static final EventListener[] NO_ACTIONS = new EventListener[0];
+	private static final long SOURCE_TIMEOUT = Long.getLong("chromium.source_timeout", 10000);
+	private static final ScheduledThreadPoolExecutor timeouts = new ScheduledThreadPoolExecutor(1, r -> {
+		Thread thread = Executors.defaultThreadFactory().newThread(r);
+		thread.setName("chromium-Source");
+		thread.setDaemon(true);
+		return thread;
+	});
+	static {
+		timeouts.setRemoveOnCancelPolicy(true);
+	}
 	private IndependentBrowser _browser;
-	private Map<EventType, List<EventAction>> subscribeEvents = new HashMap<>();
-	private Map<Long, ActionData> subscribeIndex = new HashMap<>();
-	private long eventId = 0;
+	private volatile EnumMap<EventType, EventListener[]> subscribeEvents = new EnumMap<>(EventType.class);
+	private Map<Long, ActionData> subscribeIndex = new ConcurrentHashMap<>();
+	private final AtomicLong eventId = new AtomicLong();
+	private final EventDispatcher dispatcher = new EventDispatcher();
+	private final Map<CompletableFuture<String>, String> pendingSources = new ConcurrentHashMap<>();
 	private boolean firstLoading = true;
 	private int _errorCode = 0;
 	protected static EventAction eventActionOfAfterCreated = null;
 
 	class ActionData {
 		public EventType eventType;
-		public Runnable action;
+		public EventListener action;
 
-		public ActionData(EventType eventType, Runnable action) {
+		public ActionData(EventType eventType, EventListener action) {
 			this.eventType = eventType;
 			this.action = action;
 		}
@@ -67,20 +95,40 @@ public class Subscriber {
 		return eventActionOfAfterCreated;
 	}
 
-	public synchronized long subscribe(EventType eventType, EventAction action) {
+	public long subscribe(EventType eventType, EventListener action) {
+		long id = eventId.getAndIncrement();
 		_browser.isCreated().thenRun(() -> {
-			subscribeEvents.computeIfAbsent(eventType, m -> new ArrayList<EventAction>()).add(action);
-			subscribeIndex.put(eventId, new ActionData(eventType, action));
+			synchronized (this) {
+				EnumMap<EventType, EventListener[]> events = new EnumMap<>(subscribeEvents);
+				EventListener[] actions = events.getOrDefault(eventType, NO_ACTIONS);
+				EventListener[] newActions = Arrays.copyOf(actions, actions.length + 1);
+				newActions[actions.length] = action;
+				events.put(eventType, newActions);
+				subscribeEvents = events;
+				subscribeIndex.put(id, new ActionData(eventType, action));
+			}
 		});
-		return eventId++;
+		return id;
 	}
 
-	public synchronized boolean unSubscribe(long idEvent) {
+	public boolean unSubscribe(long idEvent) {
 		_browser.isCreated().thenRun(() -> {
-			ActionData actionData = subscribeIndex.get(idEvent);
-			if (actionData != null) {
-				subscribeEvents.get(actionData.eventType).remove(actionData.action);
-				subscribeIndex.remove(idEvent);
+			synchronized (this) {
+				ActionData actionData = subscribeIndex.remove(idEvent);
+				if (actionData != null) {
+					EnumMap<EventType, EventListener[]> events = new EnumMap<>(subscribeEvents);
+					EventListener[] actions = events.getOrDefault(actionData.eventType, NO_ACTIONS);
+					for (int i = 0; i < actions.length; i++) {
+						if (actions[i] == actionData.action) {
+							EventListener[] newActions = new EventListener[actions.length - 1];
+							System.arraycopy(actions, 0, newActions, 0, i);
+							System.arraycopy(actions, i + 1, newActions, i, actions.length - i - 1);
+							events.put(actionData.eventType, newActions);
+							break;
+						}
+					}
+					subscribeEvents = events;
+				}
 			}
 		});
 		return false;
@@ -88,46 +136,111 @@ public class Subscriber {
 
 	public synchronized void unSubscribeAll() {
 		subscribeIndex.clear();
-		subscribeEvents.clear();
+		subscribeEvents = new EnumMap<>(EventType.class);
+	}
+
+	/**
+	 * Sets the executor that delivers the events of this browser. Events are still
+	 * delivered one at a time and in order, whatever executor is used. Null
+	 * restores the shared default executor.
+	 */
+	public void setExecutor(Executor executor) {
+		dispatcher.setExecutor(executor);
+	}
+
+	/**
+	 * Sets the policy applied when the subscribers of an event type fall behind.
+	 * Defaults to {@link BackpressurePolicy#BUFFER}.
+	 */
+	public void setBackpressurePolicy(EventType eventType, BackpressurePolicy policy) {
+		dispatcher.setPolicy(eventType, policy);
+	}
+
+	boolean hasSubscribers(EventType eventType) {
+		EventListener[] actions = subscribeEvents.get(eventType);
+		return actions != null && actions.length > 0;
 	}
 
 	protected void notifySubscribers(EventType eventType) {
-		notifySubscribers(eventType, new HashMap<String, Object>());
+		notifySubscribers(Event.of(eventType));
 	}
 
-	protected synchronized void notifySubscribers(EventType eventType, Map<String, Object> mapData) {
-		subscribeEvents.computeIfAbsent(eventType, m -> new ArrayList<EventAction>()).forEach(e -> {
-			e.setJsonData(mapData);
-			CompletableFuture.runAsync(e);
+	protected void notifySubscribers(Event event) {
+		EventListener[] actions = subscribeEvents.get(event.getType());
+		if (actions == null || actions.length == 0) {
+			return;
+		}
+		dispatcher.dispatch(event.getType(), () -> {
+			for (EventListener action : actions) {
+				try {
+					action.handle(event);
+				} catch (Throwable t) {
+					t.printStackTrace();
+				}
+			}
 		});
 	}
 
 	public void onAfterCreatedNotify(CefBrowser browser) {
 		if (eventActionOfAfterCreated != null && !_browser.isCreated().isDone()) {
-			Map<String, Object> mapData = new HashMap<>();
-			mapData.put("chromium_instance", (ChromiumBrowser)browser.getReference());
-			eventActionOfAfterCreated.setJsonData(mapData);
-			eventActionOfAfterCreated.run();
+			eventActionOfAfterCreated.handle(new AfterCreatedEvent((ChromiumBrowser) browser.getReference()));
 		}
 		_browser.isCreated().complete(true);
 		notifySubscribers(EventType.onAfterCreated);
 	}
 
 	public void onLoadEndNotify(CefFrame frame) {
+		if (!hasSubscribers(EventType.onLoadEnd)) {
+			return;
+		}
 		CefFrame parentFrame = frame.getParent();
-		final boolean isMain = frame.isMain();
 		final String parentId = parentFrame != null ? parentFrame.getIdentifier() : "0";
+		final String id = frame.getIdentifier();
+		LoadEndEvent event = new LoadEndEvent(frame.isMain(), frame.getName(), id, parentId,
+				() -> getFrameSource(id));
+		EventListener[] actions = subscribeEvents.get(EventType.onLoadEnd);
+		if (actions != null && Arrays.stream(actions).anyMatch(EventAction.class::isInstance)) {
+			// The map of legacy actions carries the html, so it's fetched before delivering
+			event.getSource().whenComplete((source, e) -> notifySubscribers(event));
+		} else {
+			notifySubscribers(event);
+		}
+	}
+
+	/**
+	 * Fetches the source of a frame. Completes exceptionally when the frame starts
+	 * another navigation, the browser closes, or after chromium.source_timeout
+	 * milliseconds.
+	 */
+	private CompletableFuture<String> getFrameSource(String frameId) {
+		CompletableFuture<String> source = new CompletableFuture<>();
+		CefBrowser browser = _browser.getBrowser();
+		CefFrame frame = browser != null ? browser.getFrameByIdentifier(frameId) : null;
+		if (frame == null) {
+			source.complete("");
+			return source;
+		}
+		pendingSources.put(source, frameId);
+		if (SOURCE_TIMEOUT > 0) {
+			ScheduledFuture<?> timeout = timeouts.schedule(() -> {
+				source.completeExceptionally(new TimeoutException("Source of frame " + frameId + " timed out"));
+			}, SOURCE_TIMEOUT, TimeUnit.MILLISECONDS);
+			source.whenComplete((s, e) -> timeout.cancel(false));
+		}
+		source.whenComplete((s, e) -> pendingSources.remove(source));
 		frame.getSource(new CefStringVisitor() {
 			@Override
-			public void visit(String source) {
-				String jsonSource = source.replaceAll("\"", "\\\\\"").replaceAll("\n", "\\\\n");
-				Map<String, Object> mapData = new HashMap<>();
-				mapData.put("isMain", isMain);
-				mapData.put("html", jsonSource);
-				mapData.put("name", frame.getName());
-				mapData.put("id", frame.getIdentifier());
-				mapData.put("parentId", parentId);
-				notifySubscribers(EventType.onLoadEnd, mapData);
+			public void visit(String string) {
+				source.complete(string);
+			}
+		});
+		return source;
+	}
+
+	private void cancelSources(String frameId, String reason) {
+		pendingSources.forEach((source, id) -> {
+			if (frameId == null || frameId.equals(id)) {
+				source.completeExceptionally(new IllegalStateException(reason));
 			}
 		});
 	}
@@ -146,37 +259,43 @@ public class Subscriber {
 	}
 
 	public void onAddressChangeNotify(boolean isLoading, String url) {
-		Map<String, Object> mapData = new HashMap<>();
-		mapData.put("errorCode", _errorCode);
+		int errorCode = _errorCode;
 		_errorCode = 0;
-		notifySubscribers(EventType.onNavigationFinished, mapData);
+		if (hasSubscribers(EventType.onNavigationFinished)) {
+			notifySubscribers(new NavigationEvent(EventType.onNavigationFinished, errorCode));
+		}
 	}
 
 	public void onLoadErrorNotify(int error) {
-		Map<String, Object> mapData = new HashMap<>();
-		mapData.put("errorCode", error);
 		_errorCode = error;
-		notifySubscribers(EventType.onLoadError, mapData);
+		if (hasSubscribers(EventType.onLoadError)) {
+			notifySubscribers(new NavigationEvent(EventType.onLoadError, error));
+		}
 	}
 
 	public void onLoadStartNotify() {
 		notifySubscribers(EventType.onLoadStart);
 	}
 
+	public void onLoadStartNotify(CefFrame frame) {
+		cancelSources(frame.getIdentifier(), "Frame navigated");
+		onLoadStartNotify();
+	}
+
+	public void onBeforeCloseNotify() {
+		cancelSources(null, "Browser closed");
+	}
+
 	public void onFindResultNotify(int count, int activeMatchOrdinal) {
-		Map<String, Object> mapData = new HashMap<>();
-		mapData.put("count", count);
-		mapData.put("activeMatchOrdinal", activeMatchOrdinal);
-		notifySubscribers(EventType.onFindResult, mapData);
+		if (hasSubscribers(EventType.onFindResult)) {
+			notifySubscribers(new FindResultEvent(count, activeMatchOrdinal));
+		}
 	}
 
 	public void onConsoleMessageNotify(LogSeverity level, String message, String source, int line) {
-		Map<String, Object> mapData = new HashMap<>();
-		mapData.put("level", level.toString());
-		mapData.put("message", message);
-		mapData.put("source", source);
-		mapData.put("line", line);
-		notifySubscribers(EventType.onConsoleMessage, mapData);
+		if (hasSubscribers(EventType.onConsoleMessage)) {
+			notifySubscribers(new ConsoleMessageEvent(level, message, source, line));
+		}
 	}
 
 	public void onFullscreenModeChangeNotify(boolean fullscreen) {
@@ -65,6 +65,7 @@ import org.cef.handler.CefMessageRouterHandlerAdapter;
 import org.cef.misc.BoolRef;
 
 import com.equo.chromium.swt.internal.MimeTypeLinux;
+import com.equo.chromium.utils.ClipboardEvent;
 import com.equo.chromium.utils.EventType;
 
 public class SwingBrowser extends IndependentBrowser {
@@ -172,9 +173,7 @@ public class SwingBrowser extends IndependentBrowser {
 							StringSelection transfer = new StringSelection(request);
 							cb.setContents(transfer, null);
 						}
-						Map<String, Object> mapData = new HashMap<>();
-						mapData.put("text", request);
-						getSubscriber().notifySubscribers(EventType.onClipboardWriteText, mapData);
+						getSubscriber().notifySubscribers(new ClipboardEvent(EventType.onClipboardWriteText, request));
 						callback.success(request);
 					} catch (Exception e) {
 						e.printStackTrace();
@@ -193,9 +192,7 @@ public class SwingBrowser extends IndependentBrowser {
 					try {
 						Transferable transferable = cb.getContents(null);
 						String text = (String) transferable.getTransferData(DataFlavor.stringFlavor);
-						Map<String, Object> mapData = new HashMap<>();
-						mapData.put("text", text);
-						getSubscriber().notifySubscribers(EventType.onClipboardReadText, mapData);
+						getSubscriber().notifySubscribers(new ClipboardEvent(EventType.onClipboardReadText, text));
 						callback.success(text);
 					} catch (Exception e) {
 						e.printStackTrace();
@@ -0,0 +1,89 @@
+/****************************************************************************
+**
+** Copyright (C) 2024 Equo
+**
+** This file is part of Equo Chromium.
+**
+** Commercial License Usage
+** Licensees holding valid commercial Equo licenses may use this file in
+** accordance with the commercial license agreement provided with the
+** Software or, alternatively, in accordance with the terms contained in
+** a written agreement between you and Equo. For licensing terms
+** and conditions see https://www.equo.dev/terms.
+**
+** GNU General Public License Usage
+** Alternatively, this file may be used under the terms of the GNU
+** General Public License version 3 as published by the Free Software
+** Foundation. Please review the following
+** information to ensure the GNU General Public License requirements will
+** be met: https://www.gnu.org/licenses/gpl-3.0.html.
+**
+****************************************************************************/
+package com.equo.chromium.internal;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pools for work that may block, such as Java code answering javascript
+ * queries. Uses a virtual thread per task when the running Java supports it,
+ * unless chromium.virtual_threads is false, and otherwise a pool of daemon
+ * threads. Tasks are never queued behind busy threads, since they may wait for
+ * each other: once the pool is full they run on a new thread that ends with the
+ * task.
+ */
+public final class ThreadPools {
+	private static final boolean VIRTUAL_THREADS = Boolean
+			.parseBoolean(System.getProperty("chromium.virtual_threads", "true"));
+
+	private ThreadPools() {
+	}
+
+	/**
+	 * @param name       The thread name prefix.
+	 * @param maxThreads The maximum number of pooled platform threads, ignored
+	 *                   with virtual threads.
+	 */
+	public static ExecutorService newWorkerPool(String name, int maxThreads) {
+		ExecutorService virtual = VIRTUAL_THREADS ? newVirtualThreadPool(name) : null;
+		if (virtual != null) {
+			return virtual;
+		}
+		AtomicInteger count = new AtomicInteger();
+		ThreadFactory factory = r -> {
+			Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		AtomicInteger overflow = new AtomicInteger();
+		return new ThreadPoolExecutor(0, maxThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), factory,
+				(r, executor) -> {
+					if (executor.isShutdown()) {
+						return;
+					}
+					Thread thread = new Thread(r, name + "-overflow-" + overflow.incrementAndGet());
+					thread.setDaemon(true);
+					thread.start();
+				});
+	}
+
+	private static ExecutorService newVirtualThreadPool(String name) {
+		try {
+			// Thread.ofVirtual().name(name + "-", 1).factory()
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 1L);
+			ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+			Method newPool = java.util.concurrent.Executors.class.getMethod("newThreadPerTaskExecutor",
+					ThreadFactory.class);
+			return (ExecutorService) newPool.invoke(null, factory);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+}
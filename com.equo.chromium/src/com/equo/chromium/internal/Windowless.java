@@ -24,15 +24,18 @@
 package com.equo.chromium.internal;
 
 import java.lang.reflect.Method;
+import java.util.function.Consumer;
 
 import org.cef.browser.CefBrowser;
 import org.cef.browser.CefBrowserWl;
+import org.cef.browser.CefPaintEvent;
 import org.cef.misc.Rectangle;
 
 import com.equo.chromium.ChromiumBrowser;
 import com.equo.chromium.internal.Engine.BrowserType;
 
 public final class Windowless extends IndependentBrowser {
+	private volatile FrameStream frameStream;
 
 	public Windowless(String url) {
 		this(url, null);
@@ -50,6 +53,37 @@ public final class Windowless extends IndependentBrowser {
 		}
 	}
 
+	@Override
+	public void addFrameListener(Consumer<CefPaintEvent> listener) {
+		getFrameStream().addListener(listener);
+	}
+
+	@Override
+	public void removeFrameListener(Consumer<CefPaintEvent> listener) {
+		getFrameStream().removeListener(listener);
+	}
+
+	@Override
+	public void setFrameRate(int frameRate) {
+		isCreated().thenRun(() -> getBrowser().setWindowlessFrameRate(frameRate));
+	}
+
+	private FrameStream getFrameStream() {
+		if (frameStream == null) {
+			synchronized (this) {
+				if (frameStream == null) {
+					CefBrowser browser = getBrowser();
+					if (!(browser instanceof CefBrowserWl)) {
+						throw new UnsupportedOperationException("Frames are only available for windowless browsers");
+					}
+					frameStream = new FrameStream(browser);
+					((CefBrowserWl) browser).addOnPaintListener(frameStream);
+				}
+			}
+		}
+		return frameStream;
+	}
+
 	private static BrowserType getBrowserType() {
 		if (Boolean.getBoolean("chromium.force_windowless_swt")) {
 			return BrowserType.SWT;
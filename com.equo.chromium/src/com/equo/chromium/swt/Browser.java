@@ -25,6 +25,8 @@ package com.equo.chromium.swt;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.SWTException;
@@ -562,6 +564,74 @@ public class Browser extends Composite {
 		return webBrowser.evaluate (script, trusted);
 	}
 
+	/**
+	 * Evaluates a script without blocking the calling thread.
+	 * <p>
+	 * The returned future completes with the same value that
+	 * {@link #evaluate(String)} returns, or exceptionally with the same
+	 * <code>SWTException</code> it throws. If the browser is disposed before the
+	 * script returns, the future fails with ERROR_WIDGET_DISPOSED.
+	 * </p>
+	 *
+	 * @param script the script with javascript commands
+	 *
+	 * @return a future with the return value, if any, of executing the script
+	 *
+	 * @exception IllegalArgumentException <ul>
+	 *	<li>ERROR_NULL_ARGUMENT - if the script is null</li>
+	 * </ul>
+	 *
+	 * @exception SWTException <ul>
+	 *	<li>ERROR_THREAD_INVALID_ACCESS when called from the wrong thread</li>
+	 *	<li>ERROR_WIDGET_DISPOSED when the widget has been disposed</li>
+	 * </ul>
+	 *
+	 * @see #evaluate(String)
+	 *
+	 * @since 124.0.0
+	 */
+	public CompletableFuture<Object> evaluateAsync (String script) throws SWTException {
+		checkWidget();
+		if (script == null) SWT.error (SWT.ERROR_NULL_ARGUMENT);
+		return webBrowser.evaluateAsync (script);
+	}
+
+	/**
+	 * Evaluates several scripts in a single round-trip to the renderer without
+	 * blocking the calling thread.
+	 * <p>
+	 * Scripts run in order, each as in {@link #evaluateAsync(String)}. A script
+	 * that fails to parse, throws or returns an unsupported type only fails its
+	 * own future. Scripts are compiled with <code>new Function</code>, so they
+	 * fail on pages whose Content Security Policy does not allow eval.
+	 * </p>
+	 *
+	 * @param scripts the scripts with javascript commands
+	 *
+	 * @return a future for each script, in the same order
+	 *
+	 * @exception IllegalArgumentException <ul>
+	 *	<li>ERROR_NULL_ARGUMENT - if the list or any script is null</li>
+	 * </ul>
+	 *
+	 * @exception SWTException <ul>
+	 *	<li>ERROR_THREAD_INVALID_ACCESS when called from the wrong thread</li>
+	 *	<li>ERROR_WIDGET_DISPOSED when the widget has been disposed</li>
+	 * </ul>
+	 *
+	 * @see #evaluateAsync(String)
+	 *
+	 * @since 124.0.0
+	 */
+	public List<CompletableFuture<Object>> evaluateBatch (List<String> scripts) throws SWTException {
+		checkWidget();
+		if (scripts == null) SWT.error (SWT.ERROR_NULL_ARGUMENT);
+		for (String script : scripts) {
+			if (script == null) SWT.error (SWT.ERROR_NULL_ARGUMENT);
+		}
+		return webBrowser.evaluateBatch (scripts);
+	}
+
 	/**
 	 * Navigate to the next session history item.
 	 *
@@ -278,6 +278,37 @@ public boolean isDisposed () {
 	return index < 0;
 }
 
+/**
+ * Returns <code>true</code> if javascript calls to this function should
+ * return a Promise of the value returned by <code>function(Object[])</code>
+ * instead of blocking until it returns. Many calls can then be in flight
+ * at the same time. Subclasses override this method to enable it, and it
+ * must return the same value for the life of the function.
+ *
+ * @return <code>true</code> if this BrowserFunction is asynchronous
+ * and <code>false</code> otherwise
+ *
+ * @see #isThreadSafe()
+ */
+public boolean isAsync () {
+	return false;
+}
+
+/**
+ * Returns <code>true</code> if <code>function(Object[])</code> can be
+ * invoked outside the user-interface thread. Only asynchronous functions
+ * are invoked on a worker thread, any other is invoked on the
+ * user-interface thread.
+ *
+ * @return <code>true</code> if this BrowserFunction is thread safe
+ * and <code>false</code> otherwise
+ *
+ * @see #isAsync()
+ */
+public boolean isThreadSafe () {
+	return false;
+}
+
 /**
  * Gets a array names of all frames in context browser.
  * 
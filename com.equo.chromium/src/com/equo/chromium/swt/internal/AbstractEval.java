@@ -25,10 +25,20 @@ package com.equo.chromium.swt.internal;
 
 import static com.equo.chromium.internal.Engine.debug;
 
-import java.util.Random;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 import org.cef.CefApp;
 import org.cef.browser.CefBrowser;
@@ -36,7 +46,6 @@ import org.cef.browser.CefFrame;
 import org.cef.browser.CefMessageRouter;
 import org.cef.browser.CefMessageRouter.CefMessageRouterConfig;
 import org.cef.callback.CefQueryCallback;
-import org.cef.handler.CefMessageRouterHandler;
 import org.cef.handler.CefMessageRouterHandlerAdapter;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.SWTException;
@@ -49,9 +58,74 @@ import com.github.cliftonlabs.json_simple.Jsoner;
 
 public abstract class AbstractEval {
 
+	private static final AtomicLong nextId = new AtomicLong();
+	private static final SecureRandom random = new SecureRandom();
+	private static final Map<String, PendingEval> pending = new ConcurrentHashMap<>();
+	private static final long TIMEOUT = Long.getLong("chromium.evaluate_timeout", 60000);
+	private static final ScheduledThreadPoolExecutor timeouts = new ScheduledThreadPoolExecutor(1, r -> {
+		Thread thread = Executors.defaultThreadFactory().newThread(r);
+		thread.setName("chromium-Eval");
+		thread.setDaemon(true);
+		return thread;
+	});
+	static {
+		timeouts.setRemoveOnCancelPolicy(true);
+	}
+
+	private static class PendingEval {
+		final CefBrowser browser;
+		final boolean mainFrame;
+		final Consumer<String> onResult;
+		final Consumer<Throwable> onError;
+		volatile ScheduledFuture<?> timeout;
+
+		PendingEval(CefBrowser browser, boolean mainFrame, Consumer<String> onResult, Consumer<Throwable> onError) {
+			this.browser = browser;
+			this.mainFrame = mainFrame;
+			this.onResult = onResult;
+			this.onError = onError;
+		}
+
+		void cancelTimeout() {
+			ScheduledFuture<?> timeout = this.timeout;
+			if (timeout != null) {
+				timeout.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Handles the results of all the evaluations. Requests are prefixed with the
+	 * evaluation id followed by ':', and only complete evaluations of the browser
+	 * and frame that sent them.
+	 */
+	private static class EvalResultHandler extends CefMessageRouterHandlerAdapter {
+		@Override
+		public boolean onQuery(CefBrowser browser, CefFrame frame, long queryId, String request, boolean persistent,
+				CefQueryCallback callback) {
+			debug("evaluate.returned: "+ request);
+			int separator = request.indexOf(':');
+			String id = separator < 0 ? null : request.substring(0, separator);
+			PendingEval eval = id == null ? null : pending.get(id);
+			if (eval == null || eval.browser.getIdentifier() != browser.getIdentifier()
+					|| (eval.mainFrame && frame != null && !frame.isMain()) || !pending.remove(id, eval))
+				return false;
+			eval.cancelTimeout();
+			callback.success(null);
+			try {
+				eval.onResult.accept(request.substring(separator + 1));
+			} catch (Throwable t) {
+				eval.onError.accept(t);
+			}
+			return true;
+		}
+	}
+
 	public static CefMessageRouter createRouter() {
 		CefMessageRouterConfig config = new CefMessageRouterConfig("chromiumEvaluate", "chromiumEvaluateCancel");
-		return CefMessageRouter.create(config);
+		CefMessageRouter router = CefMessageRouter.create(config);
+		router.addHandler(new EvalResultHandler(), true);
+		return router;
 	}
 
 	protected static String getEvalFunction(String id, String script, String finallyExec) {
@@ -72,47 +146,149 @@ public abstract class AbstractEval {
 
 	public abstract Object eval(String script, CompletableFuture<Boolean> created) throws InterruptedException, ExecutionException;
 
-	protected Object executeEvalWithHandler(CefMessageRouter router, String url, BiConsumer<String, String> function,
+	protected Object executeEvalWithHandler(CefBrowser browser, String url, BiConsumer<String, String> function,
 			String script, CompletableFuture<Boolean> created) throws InterruptedException, ExecutionException {
+		return executeEvalWithHandler(browser, url, function, script, created, true);
+	}
+
+	/**
+	 * @param mainFrame Whether the script runs in the main frame, or in the frame
+	 *                  that called a function.
+	 */
+	protected Object executeEvalWithHandler(CefBrowser browser, String url, BiConsumer<String, String> function,
+			String script, CompletableFuture<Boolean> created, boolean mainFrame)
+			throws InterruptedException, ExecutionException {
+		CompletableFuture<Object> evalResult = evaluate(browser, url, function, script, created, mainFrame);
+		awaitCondition(Display.getCurrent(), evalResult, false);
+		return evalResult.get();
+	}
+
+	/**
+	 * Evaluates a script in the main frame without waiting for its result.
+	 */
+	static CompletableFuture<Object> evaluateAsync(CefBrowser browser, String url, BiConsumer<String, String> function,
+			String script, CompletableFuture<Boolean> created) {
+		return evaluate(browser, url, function, script, created, true);
+	}
 
-		String id = Integer.toString(new Random().nextInt());
+	private static CompletableFuture<Object> evaluate(CefBrowser browser, String url,
+			BiConsumer<String, String> function, String script, CompletableFuture<Boolean> created,
+			boolean mainFrame) {
+		String id = newId();
 		CompletableFuture<Object> evalResult = new CompletableFuture<>();
+		PendingEval eval = new PendingEval(browser, mainFrame, request -> {
+			Object[] decodeType = (Object[]) decodeType(request, SWT.ERROR_INVALID_RETURN_VALUE);
+			evalResult.complete(decodeType[1]);
+		}, evalResult::completeExceptionally);
+		send(id, eval, url, function, getEvalFunction(id, script, getQueryFunction(id, "req")), created);
+		return evalResult;
+	}
 
-		CefMessageRouterHandler handler = new CefMessageRouterHandlerAdapter() {
-			@Override
-			public boolean onQuery(CefBrowser browser, CefFrame frame, long queryId, String request, boolean persistent,
-					CefQueryCallback callback) {
-				debug("evaluate.returned: "+ request);
+	/**
+	 * Evaluates several scripts in the main frame in a single script and
+	 * renderer round-trip. Each script is compiled on its own with new Function,
+	 * so a script that fails, even to parse, only fails its own result.
+	 */
+	static List<CompletableFuture<Object>> evaluateBatch(CefBrowser browser, String url,
+			BiConsumer<String, String> function, List<String> scripts, CompletableFuture<Boolean> created) {
+		List<CompletableFuture<Object>> results = new ArrayList<>(scripts.size());
+		if (scripts.isEmpty()) {
+			return results;
+		}
+		String id = newId();
+		JsonArray sources = new JsonArray();
+		for (String script : scripts) {
+			results.add(new CompletableFuture<>());
+			sources.add(script);
+		}
+		String eval = "(function() {\n"
+				+ "var scripts = " + sources.toJson() + ", reqs = [];\n"
+				+ "for (var i = 0; i < scripts.length; i++) {\n"
+				+ "  var req;\n"
+				+ "  try {\n"
+				+ "    var ret = (new Function(scripts[i]))();\n"
+				+ "    try { req = __encodeType(['" + id + "', ret]) } catch(e) { req = __encodeType(" + SWT.ERROR_INVALID_RETURN_VALUE + ", true) };\n"
+				+ "  } catch(e) { req = __encodeType(e.toString(), true); }\n"
+				+ "  reqs.push(req);\n"
+				+ "}\n"
+				+ getQueryFunction(id, "'[' + reqs.join(',') + ']'")
+				+ "})();";
+		PendingEval pendingEval = new PendingEval(browser, true, request -> {
+			JsonArray array;
+			try {
+				array = (JsonArray) Jsoner.deserialize(request);
+			} catch (JsonException | ClassCastException e) {
+				throw new SWTException(SWT.ERROR_INVALID_RETURN_VALUE);
+			}
+			for (int i = 0; i < results.size(); i++) {
 				try {
-					callback.success(null);
-					Object[] decodeType = (Object[]) decodeType(request, SWT.ERROR_INVALID_RETURN_VALUE);
-					if (!id.equals(decodeType[0]))
-						return false;
-					evalResult.complete(decodeType[1]);
+					Object[] decodeType = (Object[]) decodeType(array.get(i), SWT.ERROR_INVALID_RETURN_VALUE);
+					results.get(i).complete(decodeType[1]);
 				} catch (Throwable t) {
-					evalResult.completeExceptionally(t);
+					results.get(i).completeExceptionally(t);
 				}
-				return true;
 			}
-		};
-		router.addHandler(handler, true);
+		}, t -> results.forEach(result -> result.completeExceptionally(t)));
+		send(id, pendingEval, url, function, eval, created);
+		return results;
+	}
 
-		String finallyExec = "  window.chromiumEvaluate({request: req,";
+	/**
+	 * @return An evaluation id that pages can't guess.
+	 */
+	private static String newId() {
+		return Long.toString(nextId.incrementAndGet(), 36) + Long.toHexString(random.nextLong());
+	}
+
+	/**
+	 * Fails the pending evaluations of a browser.
+	 */
+	static void cancel(CefBrowser browser) {
+		cancel(browser, new SWTException(SWT.ERROR_WIDGET_DISPOSED));
+	}
+
+	/**
+	 * Fails the pending evaluations of a browser with the given exception, as
+	 * their documents are gone.
+	 */
+	static void cancel(CefBrowser browser, SWTException e) {
+		pending.values().removeIf(eval -> {
+			if (eval.browser != browser)
+				return false;
+			eval.cancelTimeout();
+			eval.onError.accept(e);
+			return true;
+		});
+	}
+
+	private static String getQueryFunction(String id, String request) {
+		String query = "  window.chromiumEvaluate({request: '" + id + ":' + " + request + ",";
 		if (debug) {
-			finallyExec += " onSuccess: function(response) { console.log(response); },"
+			query += " onSuccess: function(response) { console.log(response); },"
 					+ " onFailure: function(error_code, error_message) {console.log(error_message);},";
 		}
-		finallyExec += " persistent: true });\n";
+		return query + " persistent: true });\n";
+	}
 
-		String eval = getEvalFunction(id, script, finallyExec);
+	/**
+	 * Registers the evaluation once the browser exists, so a navigation started
+	 * before does not cancel it, and sends it. It fails after
+	 * chromium.evaluate_timeout milliseconds without a result.
+	 */
+	private static void send(String id, PendingEval eval, String url, BiConsumer<String, String> function,
+			String script, CompletableFuture<Boolean> created) {
 		created.thenRun(() -> {
+			pending.put(id, eval);
+			if (TIMEOUT > 0) {
+				eval.timeout = timeouts.schedule(() -> {
+					if (pending.remove(id, eval)) {
+						eval.onError.accept(new SWTException("Evaluate timeout exception"));
+					}
+				}, TIMEOUT, TimeUnit.MILLISECONDS);
+			}
 			CefApp.getInstance().doMessageLoopWork(-1);
-			function.accept(eval, url);
+			function.accept(script, url);
 		});
-		awaitCondition(Display.getCurrent(), evalResult, false);
-
-		router.removeHandler(handler);
-		return evalResult.get();
 	}
 
 	protected void awaitCondition(Display display, CompletableFuture<?> condition, boolean doMessageLoopWork) {
@@ -135,7 +311,7 @@ public abstract class AbstractEval {
 		}
 	}
 
-	private static Object decodeType(Object json, int errorCode) {
+	static Object decodeType(Object json, int errorCode) {
 		if (json instanceof JsonArray) {
 			int size = ((JsonArray) json).size();
 			Object[] array = new Object[size];
@@ -0,0 +1,98 @@
+/****************************************************************************
+**
+** Copyright (C) 2024 Equo
+**
+** This file is part of Equo Chromium.
+**
+** Commercial License Usage
+** Licensees holding valid commercial Equo licenses may use this file in
+** accordance with the commercial license agreement provided with the
+** Software or, alternatively, in accordance with the terms contained in
+** a written agreement between you and Equo. For licensing terms
+** and conditions see https://www.equo.dev/terms.
+**
+** GNU General Public License Usage
+** Alternatively, this file may be used under the terms of the GNU
+** General Public License version 3 as published by the Free Software
+** Foundation. Please review the following
+** information to ensure the GNU General Public License requirements will
+** be met: https://www.gnu.org/licenses/gpl-3.0.html.
+**
+****************************************************************************/
+package com.equo.chromium.swt.internal;
+
+/**
+ * Maps browser identifiers to the Chromium instance that owns them. Lookups
+ * read an immutable open addressing table without locking or boxing, and the
+ * rare changes, when browsers are created or closed, replace the table.
+ */
+final class BrowserIndex {
+	private static final class Table {
+		final int[] keys;
+		final Chromium[] values;
+		final int size;
+
+		Table(int capacity, int size) {
+			keys = new int[capacity];
+			values = new Chromium[capacity];
+			this.size = size;
+		}
+	}
+
+	private volatile Table table = new Table(16, 0);
+
+	Chromium get(int identifier) {
+		Table current = table;
+		int mask = current.keys.length - 1;
+		for (int i = hash(identifier) & mask;; i = (i + 1) & mask) {
+			Chromium value = current.values[i];
+			if (value == null || current.keys[i] == identifier) {
+				return value;
+			}
+		}
+	}
+
+	synchronized void put(int identifier, Chromium chromium) {
+		Table current = table;
+		int size = current.size + (get(identifier) == null ? 1 : 0);
+		int capacity = current.keys.length;
+		while (size * 2 > capacity) {
+			capacity *= 2;
+		}
+		Table updated = copy(current, capacity, size, identifier);
+		insert(updated, identifier, chromium);
+		table = updated;
+	}
+
+	synchronized void remove(int identifier) {
+		Table current = table;
+		if (get(identifier) != null) {
+			table = copy(current, current.keys.length, current.size - 1, identifier);
+		}
+	}
+
+	private static Table copy(Table from, int capacity, int size, int skip) {
+		Table to = new Table(capacity, size);
+		for (int i = 0; i < from.keys.length; i++) {
+			if (from.values[i] != null && from.keys[i] != skip) {
+				insert(to, from.keys[i], from.values[i]);
+			}
+		}
+		return to;
+	}
+
+	private static void insert(Table table, int identifier, Chromium chromium) {
+		int mask = table.keys.length - 1;
+		int i = hash(identifier) & mask;
+		while (table.values[i] != null) {
+			i = (i + 1) & mask;
+		}
+		table.keys[i] = identifier;
+		table.values[i] = chromium;
+	}
+
+	private static int hash(int identifier) {
+		int h = identifier * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -110,6 +110,7 @@ import org.cef.network.CefCookieManager;
 import org.cef.network.CefPostData;
 import org.cef.network.CefPostDataElement;
 import org.cef.network.CefRequest;
+import org.cef.network.CefRequest.TransitionType;
 import org.cef.network.CefResponse;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.SWTException;
@@ -171,9 +172,11 @@ import com.equo.chromium.swt.Browser;
 import com.equo.chromium.swt.BrowserFunction;
 import com.equo.chromium.swt.OpenWindowListener;
 import com.equo.chromium.swt.WindowEvent;
+import com.equo.chromium.swt.internal.spi.BinaryResourceHandler;
 import com.equo.chromium.swt.internal.spi.CommRouterHandler;
 import com.equo.chromium.swt.internal.spi.CommunicationManager;
 import com.equo.chromium.swt.internal.spi.ScriptExtension;
+import com.equo.chromium.utils.AfterCreatedEvent;
 import com.equo.chromium.utils.EventAction;
 import com.github.cliftonlabs.json_simple.Jsoner;
 
@@ -318,11 +321,26 @@ final class Chromium extends WebBrowser {
 					? Arrays.stream(arrFrames).collect(Collectors.joining(";", "", ";"))
 					: arrFrames == null || !function.top ? ";" : "";
 			int id = cefBrowser.getIdentifier();
-			String encodedFn = "__browserFunction;"+function.index+";"+function.token+";"+RequestHandler.FUNCTION_HOST+";"+id+";"+function.top+";"+frames;
-			CefMessageRouterConfig config = new CefMessageRouterConfig(encodedFn, function.getName());
-			CefMessageRouter fnRouter = CefMessageRouter.create(config);
+			CefMessageRouter fnRouter;
+			if (function.isAsync()) {
+				fnRouter = FunctionCallHandler.createFunctionRouter(function);
+			} else {
+				String encodedFn = "__browserFunction;"+function.index+";"+function.token+";"+RequestHandler.FUNCTION_HOST+";"+id+";"+function.top+";"+frames;
+				CefMessageRouterConfig config = new CefMessageRouterConfig(encodedFn, function.getName());
+				fnRouter = CefMessageRouter.create(config);
+			}
 			getClientHandler().addMessageRouter(fnRouter);
 			function.router = fnRouter;
+			if (function.isAsync()) {
+				// The script extension only runs in the documents loaded from now on
+				String script = FunctionCallHandler.getFunctionScript(function);
+				for (String frameId : cefBrowser.getFrameIdentifiers()) {
+					CefFrame frame = cefBrowser.getFrameByIdentifier(frameId);
+					if (frame != null) {
+						frame.executeJavaScript(script, frame.getURL(), 0);
+					}
+				}
+			}
 		});
 	}
 
@@ -596,6 +614,9 @@ final class Chromium extends WebBrowser {
 			CefMessageRouter commRouter = CommRouterHandler.createRouter();
 			commRouter.addHandler(new CommRouterHandler(commManager), true);
 			clientHandler.addMessageRouter(commRouter);
+			if (!Boolean.getBoolean(ScriptExtension.DISABLE_SCRIPT_EXTENSIONS_PROPERTY)) {
+				CommRouterHandler.createScriptExtensions().forEach(clientHandler::addMessageRouter);
+			}
 		}
 
 		if (!Boolean.getBoolean(ScriptExtension.DISABLE_SCRIPT_EXTENSIONS_PROPERTY)) {
@@ -609,10 +630,13 @@ final class Chromium extends WebBrowser {
 
 		router = AbstractEval.createRouter();
 		clientHandler.addMessageRouter(router);
+		clientHandler.addMessageRouter(FunctionCallHandler.createRouter());
 
 		com.equo.chromium.swt.internal.Clipboard.createClipboardRouters(clientHandler);
 	}
 
+	private static final BrowserIndex browsers = new BrowserIndex();
+
 	private static CefBrowser getTopParentPopup(CefBrowser browser) {
 		CefBrowser parent = browser;
 		while (parent != null && parent.isPopup()) {
@@ -621,7 +645,16 @@ final class Chromium extends WebBrowser {
 		return parent;
 	}
 
+	/**
+	 * Resolves the Chromium of a browser, or of the top parent of a popup, with
+	 * a single lookup once the browser has been created.
+	 */
 	static Chromium getChromium(CefBrowser browser) {
+		Chromium chromium = browsers.get(browser.getIdentifier());
+		return chromium != null ? chromium : findChromium(browser);
+	}
+
+	private static Chromium findChromium(CefBrowser browser) {
 		CefBrowser cefBrowser = browser;
 		if (cefBrowser.isPopup()) {
 			cefBrowser = getTopParentPopup(browser);
@@ -651,6 +684,10 @@ final class Chromium extends WebBrowser {
 		@Override
 		public void onAfterCreated(CefBrowser browser) {
 			debug("onAfterCreated", browser);
+			Chromium chromium = findChromium(browser);
+			if (chromium != null) {
+				browsers.put(browser.getIdentifier(), chromium);
+			}
 			if (!browser.isPopup()) {
 				getChromium(browser).onAfterCreated();
 				((ExtraApi) getChromium(browser).getWebBrowser()).getSubscriber().onAfterCreatedNotify(browser);
@@ -671,8 +708,10 @@ final class Chromium extends WebBrowser {
 		public void onBeforeClose(CefBrowser browser) {
 			debug("onBeforeClose", browser);
 			if (!browser.isPopup()) {
+				((ExtraApi) getChromium(browser).getWebBrowser()).getSubscriber().onBeforeCloseNotify();
 				getChromium(browser).onBeforeClose();
 			}
+			browsers.remove(browser.getIdentifier());
 		}
 		
 		@Override
@@ -844,6 +883,16 @@ final class Chromium extends WebBrowser {
 			}
 		}
 
+		@Override
+		public void onLoadStart(CefBrowser browser, CefFrame frame, TransitionType transitionType) {
+			if (frame.isMain()) {
+				AbstractEval.cancel(browser, new SWTException(SWT.ERROR_FAILED_EVALUATE, "Page navigated"));
+			}
+			if (!browser.isPopup()) {
+				((ExtraApi) getChromium(browser).getWebBrowser()).getSubscriber().onLoadStartNotify(frame);
+			}
+		}
+
 		@Override
 		public void onLoadEnd(CefBrowser browser, CefFrame frame, int httpStatusCode) {
 			if (!browser.isPopup()) {
@@ -1158,8 +1207,7 @@ final class Chromium extends WebBrowser {
 	}
 
 	private static boolean allowTurboLink() {
-		String[] turbolink = System.getProperty("chromium.turbolinks", "").split(";");
-		return "true".equals(turbolink[0]) || turbolink[0].contains("=");
+		return RequestRoutes.get().isTurbolinksEnabled();
 	}
 
 	static class RequestHandler extends CefRequestHandlerAdapter {
@@ -1211,14 +1259,13 @@ final class Chromium extends WebBrowser {
 				CefRequest request, boolean isNavigation, boolean isDownload, String requestInitiator,
 				BoolRef disableDefaultHandling) {
 			boolean isCustomProtocol = false;
-			if (isFunction(browser, request)) {
+			if (isFunction(browser, request) || BinaryResourceHandler.isBinaryRequest(request.getURL())) {
 				return null;
 			} else if (Engine.isRegisteredProtocol(request.getURL())) {
 				return null;
 			} else {
 				String requestUrl = request.getURL();
-				if (!requestUrl.startsWith("http") && !requestUrl.startsWith("data") && !requestUrl.startsWith("file")
-						&& !requestUrl.startsWith("chrome") && !requestUrl.startsWith("about") && !requestUrl.startsWith("devtools")) {
+				if (RequestRoutes.isExternalProtocol(requestUrl)) {
 					if (shouldAllowProtocol(requestUrl, browser)) {
 						return new CefResourceRequestHandlerAdapter() {
 							@Override
@@ -1239,7 +1286,8 @@ final class Chromium extends WebBrowser {
 				}
 			}
 
-			if (((allowTurboLink() && containsTurbolinkHeader(request))) || isCustomProtocol) {
+			RequestRoutes routes = RequestRoutes.get();
+			if ((routes.isTurbolinksEnabled() && routes.isTurbolink(request)) || isCustomProtocol) {
 				return new CefResourceRequestHandlerAdapter() {
 					@Override
 					public boolean onBeforeResourceLoad(CefBrowser browser, CefFrame frame, CefRequest request) {
@@ -1250,28 +1298,6 @@ final class Chromium extends WebBrowser {
 			return null;
 		}
 
-		private boolean containsTurbolinkHeader(CefRequest request) {
-			Map<String, String> headers = new HashMap<String, String>();
-			request.getHeaderMap(headers);
-			Map<String, String> headersLowerCase = headers.keySet().stream()
-					.collect(Collectors.toMap(key -> key.toLowerCase(), key -> headers.get(key)));
-			String[] turbolinkHeaders = System.getProperty("chromium.turbolinks", "").split(";");
-			for (String turbolinkHeader : turbolinkHeaders) {
-				if (turbolinkHeader.contains("=")) {
-					String hKey = turbolinkHeader.split("=")[0].toLowerCase();
-					String hValue = turbolinkHeader.split("=")[1];
-					if (headersLowerCase.containsKey(hKey) && headersLowerCase.get(hKey).equals(hValue)) {
-						return true;
-					}
-				}
-			}
-			return "true".equals(request.getHeaderByName("x-pjax"))
-					|| !request.getHeaderByName("Turbo-Frame").isEmpty()
-					|| ("empty".equals(request.getHeaderByName("sec-fetch-dest"))
-							&& !"navigate".equals(request.getHeaderByName("Sec-Fetch-Mode"))
-							&& !"websocket".equals(request.getHeaderByName("Sec-Fetch-Mode")));
-		}
-
 		static private boolean isFunction(CefBrowser browser, CefRequest request) {
 			if (!"POST".equals(request.getMethod()) || !request.getURL().contains(FUNCTION_HOST))
 				return false;
@@ -1282,7 +1308,7 @@ final class Chromium extends WebBrowser {
 					return getChromium(browser).functions.containsKey(functionIndex);
 				}
 				return false;
-			} catch (NumberFormatException | URISyntaxException e) {
+			} catch (NumberFormatException e) {
 				return false;
 			}
 		}
@@ -1296,14 +1322,14 @@ final class Chromium extends WebBrowser {
 			}
 		}
 
-		private static int getFunctionIndex(CefRequest request) throws URISyntaxException {
-			URI url = new URI(request.getURL());
-			return Integer.parseInt(url.getQuery());
+		private static int getFunctionIndex(CefRequest request) {
+			return RequestRoutes.getFunctionIndex(request.getURL());
 		}
 	
 		private boolean shouldAllowProtocol(String requestUrl, CefBrowser browser) {
-			String[] protocolProps = System.getProperty("chromium.custom_protocol", "").split(";");
-			if (protocolProps.length > 1) {
+			RequestRoutes routes = RequestRoutes.get();
+			String[] protocolProps = routes.getAllowedProtocols();
+			if (protocolProps != null) {
 				for (String protocolAllow : protocolProps) {
 					if (requestUrl.startsWith(protocolAllow)) {
 						return true;
@@ -1312,7 +1338,7 @@ final class Chromium extends WebBrowser {
 				return false;
 			}
 
-			String allowType = protocolProps[0].toLowerCase();
+			String allowType = routes.getAllowType();
 			if ("true".equals(allowType)) {
 				return true;
 			}
@@ -2485,6 +2511,9 @@ final class Chromium extends WebBrowser {
 		if (resize != null) {
 			resize.remove();
 		}
+		if (cefBrowser != null) {
+			AbstractEval.cancel(cefBrowser);
+		}
 	}
 	
 	private void deleteTempFolder() {
@@ -2610,17 +2639,33 @@ final class Chromium extends WebBrowser {
 		};
 	}
 
+	/**
+	 * Covers the browser with a snapshot while its bounds change. The snapshot is
+	 * taken once and scaled into a single pooled image, with nearest neighbor
+	 * interpolation while the bounds keep changing and a high quality pass once
+	 * they settle. Refreshes are throttled to one per frame.
+	 */
 	private class ResizeListener implements ControlListener, Listener, Runnable {
+		private static final int FRAME_INTERVAL = 16;
+		private static final int SETTLE_DELAY = 50;
 		private boolean mouseDown;
 		private Composite overlay;
 		private Image image;
 		private Image scaledImage;
+		private Rectangle scaledBounds;
+		private boolean scaledHighQuality;
+		private boolean refreshPending;
 		private Runnable loop = new Runnable() {
 			@Override
 			public void run() {
 				CefApp.getInstance().doMessageLoopWork(-1);
 			}
 		};
+		private Runnable refresh = () -> {
+			refreshPending = false;
+			updateOverlay(false);
+		};
+		private Runnable settle = () -> updateOverlay(!mouseDown);
 		
 		public ResizeListener() {
 			overlay = new Composite(chromium, SWT.NONE);
@@ -2630,7 +2675,7 @@ final class Chromium extends WebBrowser {
 			install();
 		}
 	
-		private Image getImage() {
+		private Image getImage(boolean highQuality) {
 			Rectangle bounds = overlay.getBounds();
 			Display display = chromium.getDisplay();
 			if (bounds.width <= 0 || bounds.height <= 0)
@@ -2649,19 +2694,27 @@ final class Chromium extends WebBrowser {
 			}
 			if (bounds.equals(image.getBounds()))
 				return image;
-			if (scaledImage != null) {
-				if (scaledImage.getBounds().equals(bounds)) {
-					return scaledImage;
-				}
-				scaledImage.dispose();
-				scaledImage = null;
+			if (scaledImage != null && bounds.width == scaledBounds.width && bounds.height == scaledBounds.height
+					&& (scaledHighQuality || !highQuality)) {
+				return scaledImage;
+			}
+			Rectangle pooled = scaledImage == null ? null : scaledImage.getBounds();
+			if (pooled == null || pooled.width < bounds.width || pooled.height < bounds.height) {
+				// Sized to the largest the browser can get, so the drag does not allocate again
+				Rectangle monitor = chromium.getMonitor().getClientArea();
+				int width = Math.max(bounds.width, Math.max(monitor.width, pooled == null ? 0 : pooled.width));
+				int height = Math.max(bounds.height, Math.max(monitor.height, pooled == null ? 0 : pooled.height));
+				if (scaledImage != null)
+					scaledImage.dispose();
+				scaledImage = new Image(display, width, height);
 			}
-			scaledImage = new Image(display, bounds.width, bounds.height);
 			GC gc = new GC(scaledImage);
-			gc.setAntialias(SWT.ON);
-			gc.setInterpolation(SWT.HIGH);
+			gc.setAntialias(highQuality ? SWT.ON : SWT.OFF);
+			gc.setInterpolation(highQuality ? SWT.HIGH : SWT.NONE);
 			gc.drawImage(image, 0, 0, image.getBounds().width, image.getBounds().height, 0, 0, bounds.width, bounds.height);
 			gc.dispose();
+			scaledBounds = bounds;
+			scaledHighQuality = highQuality;
 			return scaledImage;
 		}
 	
@@ -2689,11 +2742,13 @@ final class Chromium extends WebBrowser {
 			if (isDisposed()) return;
 			mouseDown = event.type == SWT.MouseDown;
 			if (mouseDown && chromium.isVisible() && isSash(event.widget)) {
-				getImage();
+				getImage(true);
 			}
 			if (event.type == SWT.DragDetect && chromium.isVisible() && (event.widget instanceof CTabFolder || event.widget instanceof TabFolder)) {
-				getImage();
+				getImage(true);
 				event.display.timerExec(8000, this::disposeImage);
+			} else if (!mouseDown && overlay.isVisible()) {
+				updateOverlay(true);
 			} else if (!mouseDown && (image != null || scaledImage != null)) {
 				disposeImage();
 			}
@@ -2701,16 +2756,33 @@ final class Chromium extends WebBrowser {
 	
 		private void showOverlay(Display display) {
 			if (created.isDone()) {
-				overlay.setVisible(true);
-				Image img = getImage();
-				overlay.setBackgroundImage(img);
-				if (img == null)
-					overlay.setBackground(display.getSystemColor(SWT.COLOR_WHITE));
+				if (!overlay.isVisible()) {
+					overlay.setVisible(true);
+					updateOverlay(!mouseDown);
+				} else if (!refreshPending) {
+					refreshPending = true;
+					display.timerExec(FRAME_INTERVAL, refresh);
+				}
+				display.timerExec(SETTLE_DELAY, settle);
 				display.timerExec(33*1, loop);
 				display.timerExec(33*4, this);
 			}
 		}
 	
+		private void updateOverlay(boolean highQuality) {
+			if (isDisposed() || !overlay.isVisible())
+				return;
+			Image img = getImage(highQuality);
+			if (img == null) {
+				overlay.setBackgroundImage(null);
+				overlay.setBackground(chromium.getDisplay().getSystemColor(SWT.COLOR_WHITE));
+			} else if (img != overlay.getBackgroundImage()) {
+				overlay.setBackgroundImage(img);
+			} else {
+				overlay.redraw();
+			}
+		}
+	
 		private void hideOverlay() {
 			if (overlay.isVisible())
 				overlay.setVisible(false);
@@ -2718,6 +2790,8 @@ final class Chromium extends WebBrowser {
 		}
 	
 		private void disposeImage() {
+			if (!overlay.isDisposed() && overlay.getBackgroundImage() != null)
+				overlay.setBackgroundImage(null);
 			if (image != null) {
 				image.dispose();
 				image = null;
@@ -2725,6 +2799,7 @@ final class Chromium extends WebBrowser {
 			if (scaledImage != null) {
 				scaledImage.dispose();
 				scaledImage = null;
+				scaledBounds = null;
 			}
 		}
 	
@@ -2751,9 +2826,10 @@ final class Chromium extends WebBrowser {
 	
 		public void remove() {
 			chromium.removeControlListener(this);
-			chromium.getDisplay().removeFilter(SWT.KeyDown, this);
-			chromium.getDisplay().removeFilter(SWT.KeyUp, this);
+			chromium.getDisplay().removeFilter(SWT.MouseDown, this);
+			chromium.getDisplay().removeFilter(SWT.MouseUp, this);
 			chromium.getDisplay().removeFilter(SWT.DragDetect, this);
+			disposeImage();
 			resize = null;
 		}
 	
@@ -2838,7 +2914,7 @@ final class Chromium extends WebBrowser {
 		boolean destroy = false;
 		try {
 			if (!functionsResourceHandler.isEmpty() && functionsResourceHandler.peek().inFunction) {
-				eval = new EvalBrowserFunctionImpl(router, functionsResourceHandler.peek());
+				eval = new EvalBrowserFunctionImpl(cefBrowser, functionsResourceHandler.peek());
 			} else if (inEvalBlocking) {
 				if (this.eval == null) {
 					this.eval = new EvalFileImpl(this, cefBrowser);
@@ -2846,7 +2922,7 @@ final class Chromium extends WebBrowser {
 				}
 				eval = this.eval;
 			} else {
-				eval = new EvalSimpleImpl(cefBrowser, router, getPlainUrl(url));
+				eval = new EvalSimpleImpl(cefBrowser, getPlainUrl(url));
 			}
 			return eval.eval(script, created);
 		} catch (InterruptedException e) {
@@ -2859,6 +2935,38 @@ final class Chromium extends WebBrowser {
 		}
 	}
 
+	@Override
+	public CompletableFuture<Object> evaluateAsync(String script) {
+		if (!jsEnabled) {
+			return CompletableFuture.completedFuture(null);
+		}
+		if (cefBrowser == null) {
+			createBrowser();
+		}
+		checkBrowser();
+		return AbstractEval.evaluateAsync(cefBrowser, getPlainUrl(url), this::executeEval, script, created);
+	}
+
+	@Override
+	public List<CompletableFuture<Object>> evaluateBatch(List<String> scripts) {
+		if (!jsEnabled) {
+			List<CompletableFuture<Object>> results = new ArrayList<>(scripts.size());
+			scripts.forEach(script -> results.add(CompletableFuture.completedFuture(null)));
+			return results;
+		}
+		if (cefBrowser == null) {
+			createBrowser();
+		}
+		checkBrowser();
+		return AbstractEval.evaluateBatch(cefBrowser, getPlainUrl(url), this::executeEval, scripts, created);
+	}
+
+	private void executeEval(String eval, String url) {
+		if (cefBrowser != null) {
+			cefBrowser.executeJavaScript(eval, url, 1);
+		}
+	}
+
 	static String encodeType(Object ret) {
 		try {
 			return Jsoner.serialize(ret);
@@ -3206,10 +3314,7 @@ final class Chromium extends WebBrowser {
 		public void setCreated() {
 			EventAction eventAction = Subscriber.getEventActionOfAfterCreated();
 			if (eventAction != null && !isCreated().isDone()) {
-				Map<String, Object> mapData = new HashMap<>();
-				mapData.put("chromium_instance", (ChromiumBrowser)this);
-				eventAction.setJsonData(mapData);
-				eventAction.run();
+				eventAction.handle(new AfterCreatedEvent(this));
 			}
 			isCreated().complete(true);
 		}
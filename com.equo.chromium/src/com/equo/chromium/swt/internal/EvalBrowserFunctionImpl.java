@@ -27,16 +27,16 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.function.BiConsumer;
 
-import org.cef.browser.CefMessageRouter;
+import org.cef.browser.CefBrowser;
 
 import com.equo.chromium.swt.internal.Chromium.FunctionsResourceHandler;
 
 public class EvalBrowserFunctionImpl extends AbstractEval {
-	private CefMessageRouter router;
+	private CefBrowser cefBrowser;
 	private FunctionsResourceHandler functionsResourceHandler;
 
-	EvalBrowserFunctionImpl(CefMessageRouter router, FunctionsResourceHandler functionsResourceHandler) {
-		this.router = router;
+	EvalBrowserFunctionImpl(CefBrowser cefBrowser, FunctionsResourceHandler functionsResourceHandler) {
+		this.cefBrowser = cefBrowser;
 		this.functionsResourceHandler = functionsResourceHandler;
 	}
 
@@ -44,6 +44,6 @@ public class EvalBrowserFunctionImpl extends AbstractEval {
 	public Object eval(String script, CompletableFuture<Boolean> created)
 			throws InterruptedException, ExecutionException {
 		BiConsumer<String, String> function = (eval, url) -> functionsResourceHandler.setEval(eval);
-		return executeEvalWithHandler(router, "", function, script, created);
+		return executeEvalWithHandler(cefBrowser, "", function, script, created, false);
 	}
 }
@@ -28,6 +28,8 @@ import static com.equo.chromium.internal.Engine.debug;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -35,6 +37,7 @@ import java.util.Random;
 import java.util.Stack;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.LockSupport;
 
 import org.cef.CefApp;
 import org.cef.browser.CefBrowser;
@@ -61,7 +64,15 @@ public class EvalFileImpl extends AbstractEval {
 	private static final String EVAL_FILE_NAME = "equochromium";
 	private CefBrowser cefBrowser;
 	private Chromium chromium;
-	private RandomAccessFile raf;
+	private static final int SPINS = 100;
+	private static final long MIN_PARK_NANOS = 20_000;
+	private static final long MAX_PARK_NANOS = 5_000_000;
+	private final Object lock = new Object();
+	private FileChannel channel;
+	private long pointer;
+	private ByteBuffer buffer = ByteBuffer.allocate(8192);
+	private volatile Thread watcher;
+	private volatile boolean woken;
 	private Stack<CompletableFuture<Object>> received = new Stack<CompletableFuture<Object>>();
 	private String id;
 
@@ -88,8 +99,8 @@ public class EvalFileImpl extends AbstractEval {
 					finish(display, null, new SWTException(e.getMessage()));
 				}
 			});
-		} else { // Eval
-			writeEvalMessage(eval);
+		} else if (!writeEvalMessage(eval)) { // Eval
+			finish(display, null, new SWTException("Evaluate channel closed"));
 		}
 
 		awaitCondition(display, received, true);
@@ -97,30 +108,25 @@ public class EvalFileImpl extends AbstractEval {
 		return received.get();
 	}
 
-	protected void writeEvalMessage(String eval) {
-		String encodeEval = Chromium.encodeType(eval);
-		try {
-			raf.writeBytes(MsgType.Eval.str()); // Eval
-			raf.writeBytes("\n"+encodeEval+"\n");
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+	protected boolean writeEvalMessage(String eval) {
+		return write(MsgType.Eval, Chromium.encodeType(eval));
 	}
 
 	private void startFileWatcher(Display display, final File file, String id) {
 		Thread t = new Thread(() -> {
 			long timeOut = System.currentTimeMillis() + 60000;
 			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
-				this.raf = raf;
-				while (!received.isEmpty()) {
-					long offset = raf.getFilePointer();
-					String type = raf.readLine();
-					if (type != null) {
-						String line = raf.readLine();
-						if (line == null) {
-							raf.seek(offset);
-							continue;
-						}
+				synchronized (lock) {
+					channel = raf.getChannel();
+					pointer = 0;
+				}
+				int idle = 0;
+				while (!received.isEmpty() && watcher == Thread.currentThread()) {
+					String[] message = readMessage();
+					if (message != null) {
+						idle = 0;
+						String type = message[0];
+						String line = message[1];
 						try {
 							Object[] payload = ((Object[]) decodeType(line, type.equals(MsgType.BfCall.str()) ? SWT.ERROR_INVALID_ARGUMENT : SWT.ERROR_INVALID_RETURN_VALUE));
 							if (payload.length == 3) { // BF call
@@ -134,16 +140,9 @@ public class EvalFileImpl extends AbstractEval {
 										Object ret = null;
 										try {
 											ret = browserFunction.function(args);
-											String encodeType = Chromium.encodeType(ret);
-											raf.writeBytes(MsgType.BfRet.str()); // BF ret
-											raf.writeBytes("\n"+encodeType+"\n");
+											write(MsgType.BfRet, Chromium.encodeType(ret));
 										} catch(Throwable e) {
-											try {
-												raf.writeBytes(MsgType.BfRetEx.str()); // BF ret
-												raf.writeBytes("\n"+e.toString()+"\n");
-											} catch (IOException e1) {
-												e1.printStackTrace();
-											}
+											write(MsgType.BfRetEx, e.toString());
 										}
 									});
 								}
@@ -155,14 +154,13 @@ public class EvalFileImpl extends AbstractEval {
 							}
 						} catch (SWTException e1) {
 							if (type.equals(MsgType.BfCall.str()) && e1.code == SWT.ERROR_INVALID_ARGUMENT) {
-								raf.writeBytes(MsgType.BfRetEx.str()); // BF ret
-								raf.writeBytes("\n"+e1.toString()+"\n");
+								write(MsgType.BfRetEx, e1.toString());
 							} else {
 								finish(display, file, e1);
 							}
 						}
 					} else {
-						Thread.sleep(30);
+						idle = awaitData(idle);
 					}
 					if (System.currentTimeMillis() > timeOut) {
 						finish(display, file, new SWTException("Evaluate timeout exception"));
@@ -171,15 +169,123 @@ public class EvalFileImpl extends AbstractEval {
 			} catch (Throwable throwable) {
 				finish(display, file, throwable);
 			} finally {
-				this.raf = null;
+				synchronized (lock) {
+					if (watcher == Thread.currentThread()) {
+						channel = null;
+						watcher = null;
+					}
+				}
 				if (file.exists())
 					file.delete();
 			}
 		}, "eval");
 		t.setDaemon(true);
+		watcher = t;
 		t.start();
 	}
 
+	/**
+	 * Spins briefly and then parks for increasing periods while the renderer has
+	 * not written anything. Writes unpark the watcher since a reply is expected.
+	 */
+	private int awaitData(int idle) {
+		if (woken) {
+			woken = false;
+			return 0;
+		}
+		if (idle < SPINS) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, MIN_PARK_NANOS << Math.min(idle - SPINS, 16)));
+		}
+		return idle + 1;
+	}
+
+	/**
+	 * Reads the next message, a type line followed by a payload line, starting
+	 * at the current pointer.
+	 * 
+	 * @return the type and payload, or null if no complete message was written
+	 *         yet.
+	 */
+	private String[] readMessage() throws IOException {
+		synchronized (lock) {
+			if (channel.size() <= pointer) {
+				return null;
+			}
+			while (true) {
+				buffer.clear();
+				int read = channel.read(buffer, pointer);
+				if (read <= 0) {
+					return null;
+				}
+				byte[] bytes = buffer.array();
+				int first = indexOf(bytes, 0, read);
+				int second = first < 0 ? -1 : indexOf(bytes, first + 1, read);
+				if (second >= 0) {
+					String type = line(bytes, 0, first);
+					String line = line(bytes, first + 1, second);
+					pointer += second + 1;
+					return new String[] { type, line };
+				}
+				if (read < buffer.capacity()) {
+					return null;
+				}
+				buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+			}
+		}
+	}
+
+	private static int indexOf(byte[] bytes, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (bytes[i] == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@SuppressWarnings("deprecation")
+	private static String line(byte[] bytes, int from, int to) {
+		if (to > from && bytes[to - 1] == '\r') {
+			to--;
+		}
+		// Same byte to char mapping as RandomAccessFile.readLine
+		return new String(bytes, 0, from, to - from);
+	}
+
+	/**
+	 * @return Whether the message was written, it's logged otherwise.
+	 */
+	@SuppressWarnings("deprecation")
+	private boolean write(MsgType type, String payload) {
+		String message = type.str() + "\n" + payload + "\n";
+		byte[] bytes = new byte[message.length()];
+		// Same char to byte mapping as RandomAccessFile.writeBytes
+		message.getBytes(0, message.length(), bytes, 0);
+		synchronized (lock) {
+			if (channel == null) {
+				new IllegalStateException("Eval channel closed, dropping " + type + " message").printStackTrace();
+				return false;
+			}
+			try {
+				ByteBuffer data = ByteBuffer.wrap(bytes);
+				while (data.hasRemaining()) {
+					pointer += channel.write(data, pointer);
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+				return false;
+			}
+		}
+		woken = true;
+		Thread t = watcher;
+		if (t != null) {
+			LockSupport.unpark(t);
+		}
+		return true;
+	}
+
 	private void finish(Display display, File file, Object decodeType) {
 		if (file != null)
 			file.delete();
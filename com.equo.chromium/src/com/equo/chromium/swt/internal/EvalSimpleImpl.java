@@ -28,16 +28,13 @@ import java.util.concurrent.ExecutionException;
 import java.util.function.BiConsumer;
 
 import org.cef.browser.CefBrowser;
-import org.cef.browser.CefMessageRouter;
 
 public class EvalSimpleImpl extends AbstractEval {
 	private String url;
-	private CefMessageRouter router;
 	private CefBrowser cefBrowser;
 
-	public EvalSimpleImpl(CefBrowser cefBrowser, CefMessageRouter router, String url) {
+	public EvalSimpleImpl(CefBrowser cefBrowser, String url) {
 		this.url = url;
-		this.router = router;
 		this.cefBrowser = cefBrowser;
 	}
 
@@ -45,6 +42,6 @@ public class EvalSimpleImpl extends AbstractEval {
 	public Object eval(String script, CompletableFuture<Boolean> created)
 			throws InterruptedException, ExecutionException {
 		BiConsumer<String, String> function = (eval, url) -> cefBrowser.executeJavaScript(eval, url, 1);
-		return executeEvalWithHandler(router, url, function, script, created);
+		return executeEvalWithHandler(cefBrowser, url, function, script, created);
 	}
 }
@@ -0,0 +1,134 @@
+/****************************************************************************
+**
+** Copyright (C) 2024 Equo
+**
+** This file is part of Equo Chromium.
+**
+** Commercial License Usage
+** Licensees holding valid commercial Equo licenses may use this file in
+** accordance with the commercial license agreement provided with the
+** Software or, alternatively, in accordance with the terms contained in
+** a written agreement between you and Equo. For licensing terms
+** and conditions see https://www.equo.dev/terms.
+**
+** GNU General Public License Usage
+** Alternatively, this file may be used under the terms of the GNU
+** General Public License version 3 as published by the Free Software
+** Foundation. Please review the following
+** information to ensure the GNU General Public License requirements will
+** be met: https://www.gnu.org/licenses/gpl-3.0.html.
+**
+****************************************************************************/
+package com.equo.chromium.swt.internal;
+
+import static com.equo.chromium.internal.Engine.debug;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+
+import org.cef.browser.CefBrowser;
+import org.cef.browser.CefFrame;
+import org.cef.browser.CefMessageRouter;
+import org.cef.browser.CefMessageRouter.CefMessageRouterConfig;
+import org.cef.callback.CefQueryCallback;
+import org.cef.handler.CefMessageRouterHandlerAdapter;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.SWTException;
+
+import com.equo.chromium.internal.ThreadPools;
+import com.equo.chromium.swt.BrowserFunction;
+import com.github.cliftonlabs.json_simple.JsonArray;
+import com.github.cliftonlabs.json_simple.JsonException;
+import com.github.cliftonlabs.json_simple.Jsoner;
+
+/**
+ * Answers the calls of asynchronous BrowserFunctions. Every call is a query
+ * of the same router with the JSON array [index, token, args], so calls are
+ * pipelined without a request per call. Thread safe functions run on a
+ * worker pool and the others on the user-interface thread.
+ */
+class FunctionCallHandler extends CefMessageRouterHandlerAdapter {
+	private static final String QUERY = "__equoFunctionCall";
+	private static final ExecutorService threadPool = ThreadPools.newWorkerPool("chromium-BrowserFunction",
+			Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+	static CefMessageRouter createRouter() {
+		CefMessageRouterConfig config = new CefMessageRouterConfig(QUERY, QUERY + "Cancel");
+		CefMessageRouter router = CefMessageRouter.create(config);
+		router.addHandler(new FunctionCallHandler(), true);
+		return router;
+	}
+
+	/**
+	 * @return The router defining the function in the top window, when it is
+	 *         accessible there, and in the child frames it is accessible in.
+	 */
+	static CefMessageRouter createFunctionRouter(BrowserFunction function) {
+		return CefMessageRouter.create(new CefMessageRouterConfig("__scriptExtension", getFunctionScript(function)));
+	}
+
+	/**
+	 * Calls of the function return a Promise rejected with an Error on failure.
+	 */
+	static String getFunctionScript(BrowserFunction function) {
+		String[] frameNames = function.getFrameNames();
+		String frames = frameNames == null ? "null"
+				: Arrays.stream(frameNames).map(Jsoner::serialize).collect(Collectors.joining(",", "[", "]"));
+		return "(function() {\n"
+				+ "  var frames = " + frames + ";\n"
+				+ "  if (window.top === window ? !" + function.top + " : frames && frames.indexOf(window.name) < 0) return;\n"
+				+ "  window[" + Jsoner.serialize(function.getName()) + "] = function() {\n"
+				+ "    var request = JSON.stringify([" + function.index + ", '" + function.token + "', Array.prototype.slice.call(arguments)]);\n"
+				+ "    return new Promise(function(resolve, reject) {\n"
+				+ "      window." + QUERY + "({\n"
+				+ "        request: request,\n"
+				+ "        onSuccess: function(response) { resolve(JSON.parse(response)); },\n"
+				+ "        onFailure: function(code, message) { reject(new Error(message)); }\n"
+				+ "      });\n"
+				+ "    });\n"
+				+ "  };\n"
+				+ "})();";
+	}
+
+	@Override
+	public boolean onQuery(CefBrowser browser, CefFrame frame, long queryId, String request, boolean persistent,
+			CefQueryCallback callback) {
+		if (browser.isPopup()) {
+			return false;
+		}
+		Chromium chromium = Chromium.getChromium(browser);
+		BrowserFunction function;
+		Object[] args;
+		try {
+			JsonArray call = (JsonArray) Jsoner.deserialize(request);
+			function = chromium == null ? null : chromium.functions.get(call.getInteger(0));
+			if (function == null || !function.isAsync() || !function.token.equals(call.getString(1))) {
+				return false;
+			}
+			args = (Object[]) AbstractEval.decodeType(call.get(2), SWT.ERROR_INVALID_ARGUMENT);
+		} catch (JsonException | RuntimeException e) {
+			callback.failure(SWT.ERROR_INVALID_ARGUMENT, e.getMessage());
+			return true;
+		}
+		Runnable call = () -> {
+			try {
+				if (function.isDisposed()) {
+					SWT.error(SWT.ERROR_FUNCTION_DISPOSED);
+				}
+				callback.success(Chromium.encodeType(function.function(args)));
+			} catch (SWTException e) {
+				callback.failure(e.code, e.getMessage());
+			} catch (Throwable t) {
+				debug("BrowserFunction " + function.getName() + " failed: " + t, browser);
+				callback.failure(SWT.ERROR_UNSPECIFIED, t.toString());
+			}
+		};
+		if (function.isThreadSafe()) {
+			threadPool.execute(call);
+		} else {
+			Chromium.asyncExec(call);
+		}
+		return true;
+	}
+}
@@ -0,0 +1,147 @@
+/****************************************************************************
+**
+** Copyright (C) 2024 Equo
+**
+** This file is part of Equo Chromium.
+**
+** Commercial License Usage
+** Licensees holding valid commercial Equo licenses may use this file in
+** accordance with the commercial license agreement provided with the
+** Software or, alternatively, in accordance with the terms contained in
+** a written agreement between you and Equo. For licensing terms
+** and conditions see https://www.equo.dev/terms.
+**
+** GNU General Public License Usage
+** Alternatively, this file may be used under the terms of the GNU
+** General Public License version 3 as published by the Free Software
+** Foundation. Please review the following
+** information to ensure the GNU General Public License requirements will
+** be met: https://www.gnu.org/licenses/gpl-3.0.html.
+**
+****************************************************************************/
+package com.equo.chromium.swt.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cef.network.CefRequest;
+
+/**
+ * The request routing rules read from the chromium.turbolinks and
+ * chromium.custom_protocol properties, compiled once and again only when the
+ * properties change, so that routing a request does not split properties or
+ * copy its headers.
+ */
+final class RequestRoutes {
+	private static final String TURBOLINKS_PROPERTY = "chromium.turbolinks";
+	private static final String CUSTOM_PROTOCOL_PROPERTY = "chromium.custom_protocol";
+	private static final String[] BUILTIN_PREFIXES = { "http", "data", "file", "chrome", "about", "devtools" };
+
+	private static volatile RequestRoutes current = new RequestRoutes(null, null);
+
+	private final String turbolinks;
+	private final String customProtocol;
+	private final boolean turbolinksEnabled;
+	private final String[] headerNames;
+	private final String[] headerValues;
+	private final String[] allowedProtocols;
+	private final String allowType;
+
+	private RequestRoutes(String turbolinks, String customProtocol) {
+		this.turbolinks = turbolinks;
+		this.customProtocol = customProtocol;
+		String[] turbolinkRules = (turbolinks == null ? "" : turbolinks).split(";");
+		turbolinksEnabled = "true".equals(turbolinkRules[0]) || turbolinkRules[0].contains("=");
+		List<String> names = new ArrayList<>();
+		List<String> values = new ArrayList<>();
+		for (String rule : turbolinkRules) {
+			if (rule.contains("=")) {
+				String[] header = rule.split("=");
+				names.add(header[0]);
+				values.add(header[1]);
+			}
+		}
+		headerNames = names.toArray(new String[0]);
+		headerValues = values.toArray(new String[0]);
+		String[] protocolProps = (customProtocol == null ? "" : customProtocol).split(";");
+		allowedProtocols = protocolProps.length > 1 ? protocolProps : null;
+		allowType = protocolProps[0].toLowerCase();
+	}
+
+	/**
+	 * @return The rules of the current properties, compiled again only if they
+	 *         changed since the last call.
+	 */
+	static RequestRoutes get() {
+		RequestRoutes routes = current;
+		String turbolinks = System.getProperty(TURBOLINKS_PROPERTY);
+		String customProtocol = System.getProperty(CUSTOM_PROTOCOL_PROPERTY);
+		if (!same(turbolinks, routes.turbolinks) || !same(customProtocol, routes.customProtocol)) {
+			routes = new RequestRoutes(turbolinks, customProtocol);
+			current = routes;
+		}
+		return routes;
+	}
+
+	private static boolean same(String value, String compiled) {
+		return value == compiled || (value != null && value.equals(compiled));
+	}
+
+	boolean isTurbolinksEnabled() {
+		return turbolinksEnabled;
+	}
+
+	/**
+	 * @return Whether the url has none of the schemes loaded by Chromium itself.
+	 */
+	static boolean isExternalProtocol(String url) {
+		for (String prefix : BUILTIN_PREFIXES) {
+			if (url.startsWith(prefix)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	boolean isTurbolink(CefRequest request) {
+		for (int i = 0; i < headerNames.length; i++) {
+			if (headerValues[i].equals(request.getHeaderByName(headerNames[i]))) {
+				return true;
+			}
+		}
+		return "true".equals(request.getHeaderByName("x-pjax"))
+				|| !request.getHeaderByName("Turbo-Frame").isEmpty()
+				|| ("empty".equals(request.getHeaderByName("sec-fetch-dest"))
+						&& !"navigate".equals(request.getHeaderByName("Sec-Fetch-Mode"))
+						&& !"websocket".equals(request.getHeaderByName("Sec-Fetch-Mode")));
+	}
+
+	/**
+	 * @return The protocols allowed when chromium.custom_protocol lists them, or
+	 *         null.
+	 */
+	String[] getAllowedProtocols() {
+		return allowedProtocols;
+	}
+
+	/**
+	 * @return The lower case chromium.custom_protocol value when it does not list
+	 *         protocols.
+	 */
+	String getAllowType() {
+		return allowType;
+	}
+
+	/**
+	 * Parses the function index from the query of a url like
+	 * https://functions/?index#partial without a URI.
+	 */
+	static int getFunctionIndex(String url) {
+		int start = url.indexOf('?');
+		if (start < 0) {
+			throw new NumberFormatException(url);
+		}
+		int end = url.indexOf('#', start);
+		return Integer.parseInt(url.substring(start + 1, end < 0 ? url.length() : end));
+	}
+}
@@ -32,6 +32,8 @@ import java.net.URI;
 import java.util.Base64;
 import java.util.Map;
 
+import com.equo.chromium.swt.internal.spi.DynamicCefSchemeHandlerFactory;
+
 public class SetTextResourceHandler {
 
 	private Object middlewareService;
@@ -64,6 +66,7 @@ public class SetTextResourceHandler {
 				removeResourceHandlerMethod.invoke(middlewareService,
 						new Object[] { uri.getScheme(), uri.getAuthority() });
 			}
+			DynamicCefSchemeHandlerFactory.invalidate(uri.getScheme(), uri.getAuthority());
 		} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException
 				| SecurityException | ClassNotFoundException e) {
 
@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.SWTException;
@@ -377,6 +378,24 @@ public Object evaluate (String script) throws SWTException {
 	return null;
 }
 
+public CompletableFuture<Object> evaluateAsync (String script) {
+	CompletableFuture<Object> result = new CompletableFuture<> ();
+	try {
+		result.complete (evaluate (script));
+	} catch (SWTException e) {
+		result.completeExceptionally (e);
+	}
+	return result;
+}
+
+public List<CompletableFuture<Object>> evaluateBatch (List<String> scripts) {
+	List<CompletableFuture<Object>> results = new ArrayList<> (scripts.size ());
+	for (String script : scripts) {
+		results.add (evaluateAsync (script));
+	}
+	return results;
+}
+
 public abstract boolean forward ();
 
 public abstract String getBrowserType ();
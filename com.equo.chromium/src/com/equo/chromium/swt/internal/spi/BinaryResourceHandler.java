@@ -0,0 +1,241 @@
+/****************************************************************************
+**
+** Copyright (C) 2024 Equo
+**
+** This file is part of Equo Chromium.
+**
+** Commercial License Usage
+** Licensees holding valid commercial Equo licenses may use this file in
+** accordance with the commercial license agreement provided with the
+** Software or, alternatively, in accordance with the terms contained in
+** a written agreement between you and Equo. For licensing terms
+** and conditions see https://www.equo.dev/terms.
+**
+** GNU General Public License Usage
+** Alternatively, this file may be used under the terms of the GNU
+** General Public License version 3 as published by the Free Software
+** Foundation. Please review the following
+** information to ensure the GNU General Public License requirements will
+** be met: https://www.gnu.org/licenses/gpl-3.0.html.
+**
+****************************************************************************/
+package com.equo.chromium.swt.internal.spi;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Vector;
+
+import org.cef.browser.CefBrowser;
+import org.cef.browser.CefFrame;
+import org.cef.callback.CefCallback;
+import org.cef.callback.CefSchemeHandlerFactory;
+import org.cef.handler.CefResourceHandler;
+import org.cef.handler.CefResourceHandlerAdapter;
+import org.cef.misc.IntRef;
+import org.cef.misc.StringRef;
+import org.cef.network.CefPostData;
+import org.cef.network.CefPostDataElement;
+import org.cef.network.CefRequest;
+import org.cef.network.CefResponse;
+
+/**
+ * Answers the POST requests of window.equoSendBinary with
+ * {@link CommunicationManager#receiveBinaryMessage(String, ByteBuffer)}, so
+ * raw bytes travel both ways without being encoded as strings. The message is
+ * sent in the m parameter of the URL and the payload as the request body.
+ * Errors are answered with status 500 and the X-Error-Code and
+ * X-Error-Message headers. Only the origin of the frame that sends the request
+ * may read the response, and file payloads are rejected.
+ */
+public class BinaryResourceHandler extends CefResourceHandlerAdapter {
+	public static final String HOST = "equo-binary";
+	private static final String URL = "https://" + HOST + "/";
+
+	/**
+	 * window.equoSendBinary(message, data) posts an ArrayBuffer, typed array or
+	 * Blob and returns a promise of the response as an ArrayBuffer, or rejects
+	 * with {errorCode, message}.
+	 */
+	static final String SCRIPT = "(function() {\n"
+			+ "  window.equoSendBinary = function(message, data) {\n"
+			+ "    return fetch('" + URL + "?m=' + encodeURIComponent(message), {method: 'POST', body: data})\n"
+			+ "      .then(function(response) {\n"
+			+ "        if (response.ok) return response.arrayBuffer();\n"
+			+ "        throw {errorCode: +response.headers.get('X-Error-Code') || -1,\n"
+			+ "          message: decodeURIComponent(response.headers.get('X-Error-Message') || '')};\n"
+			+ "      }, function(e) {\n"
+			+ "        throw {errorCode: -1, message: String(e)};\n"
+			+ "      });\n"
+			+ "  };\n"
+			+ "})();";
+
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+	private final CommunicationManager commManager;
+	private final String frameOrigin;
+	private volatile String allowedOrigin;
+	private volatile ByteBuffer response;
+	private volatile CommMessageError error;
+
+	private BinaryResourceHandler(CommunicationManager commManager, String frameOrigin) {
+		this.commManager = commManager;
+		this.frameOrigin = frameOrigin;
+	}
+
+	public static CefSchemeHandlerFactory createFactory(CommunicationManager commManager) {
+		return new CefSchemeHandlerFactory() {
+			@Override
+			public CefResourceHandler create(CefBrowser browser, CefFrame frame, String schemeName,
+					CefRequest request) {
+				if (!"POST".equals(request.getMethod())) {
+					return null;
+				}
+				return new BinaryResourceHandler(commManager, frame == null ? null : getOrigin(frame.getURL()));
+			}
+		};
+	}
+
+	public static boolean isBinaryRequest(String url) {
+		return url.startsWith(URL);
+	}
+
+	@Override
+	public boolean processRequest(CefRequest request, CefCallback callback) {
+		String origin = request.getHeaderByName("Origin");
+		if (origin != null && origin.equals(frameOrigin)) {
+			allowedOrigin = origin;
+		}
+		String message;
+		ByteBuffer payload;
+		try {
+			message = getMessage(request.getURL());
+			payload = getPayload(request.getPostData());
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		if (payload == null) {
+			error = new CommMessageError(-1, "Files cannot be sent as binary messages");
+			callback.Continue();
+			return true;
+		}
+		CommRouterHandler.execute(() -> {
+			try {
+				Optional<ByteBuffer> result = commManager.receiveBinaryMessage(message, payload);
+				response = result.isPresent() ? result.get().slice() : EMPTY;
+			} catch (CommMessageError e) {
+				error = e;
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				error = new CommMessageError(-1, e.toString());
+			}
+			callback.Continue();
+		});
+		return true;
+	}
+
+	@Override
+	public void getResponseHeaders(CefResponse response, IntRef responseLength, StringRef redirectUrl) {
+		if (allowedOrigin != null) {
+			response.setHeaderByName("Access-Control-Allow-Origin", allowedOrigin, true);
+		}
+		if (error != null) {
+			response.setStatus(500);
+			response.setHeaderByName("Access-Control-Expose-Headers", "X-Error-Code, X-Error-Message", true);
+			response.setHeaderByName("X-Error-Code", String.valueOf(error.getErrorCode()), true);
+			response.setHeaderByName("X-Error-Message", encode(error.getMessage()), true);
+			responseLength.set(0);
+		} else {
+			response.setStatus(200);
+			response.setMimeType("application/octet-stream");
+			responseLength.set(this.response.remaining());
+		}
+	}
+
+	@Override
+	public boolean readResponse(byte[] dataOut, int bytesToRead, IntRef bytesRead, CefCallback callback) {
+		ByteBuffer data = response;
+		if (data == null || !data.hasRemaining()) {
+			bytesRead.set(0);
+			return false;
+		}
+		int transfer = Math.min(data.remaining(), bytesToRead);
+		data.get(dataOut, 0, transfer);
+		bytesRead.set(transfer);
+		return true;
+	}
+
+	private static String getMessage(String url) throws UnsupportedEncodingException {
+		int start = url.indexOf("?m=");
+		if (start < 0) {
+			return "";
+		}
+		int end = url.indexOf('&', start);
+		return URLDecoder.decode(url.substring(start + 3, end < 0 ? url.length() : end), "UTF-8");
+	}
+
+	/**
+	 * Same result as the Origin header Chromium sends for requests of a document
+	 * at the URL.
+	 */
+	private static String getOrigin(String url) {
+		String authority = DynamicCefSchemeHandlerFactory.getAuthority(url);
+		if (authority == null) {
+			return "null";
+		}
+		int at = authority.lastIndexOf('@');
+		return url.substring(0, url.indexOf(':')).toLowerCase() + "://" + authority.substring(at + 1).toLowerCase();
+	}
+
+	/**
+	 * Copies the post data into a single buffer, wrapping the bytes of a single
+	 * element without another copy.
+	 * 
+	 * @return The payload, or null if it contains files.
+	 */
+	private static ByteBuffer getPayload(CefPostData postData) throws IOException {
+		if (postData == null) {
+			return EMPTY;
+		}
+		Vector<CefPostDataElement> elements = new Vector<CefPostDataElement>();
+		postData.getElements(elements);
+		List<byte[]> parts = new ArrayList<>(elements.size());
+		int length = 0;
+		for (CefPostDataElement element : elements) {
+			byte[] part;
+			if (element.getType() == CefPostDataElement.Type.PDE_TYPE_BYTES) {
+				part = new byte[element.getBytesCount()];
+				element.getBytes(part.length, part);
+			} else if (element.getType() == CefPostDataElement.Type.PDE_TYPE_FILE) {
+				return null;
+			} else {
+				continue;
+			}
+			parts.add(part);
+			length += part.length;
+		}
+		if (parts.size() == 1) {
+			return ByteBuffer.wrap(parts.get(0));
+		}
+		ByteBuffer payload = ByteBuffer.allocate(length);
+		for (byte[] part : parts) {
+			payload.put(part);
+		}
+		payload.flip();
+		return payload;
+	}
+
+	private static String encode(String message) {
+		try {
+			return message == null ? "" : URLEncoder.encode(message, "UTF-8").replace("+", "%20");
+		} catch (UnsupportedEncodingException e) {
+			return "";
+		}
+	}
+}
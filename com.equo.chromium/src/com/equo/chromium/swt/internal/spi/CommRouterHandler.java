@@ -19,14 +19,19 @@
 ** be met: https://www.gnu.org/licenses/gpl-3.0.html.
 **
 ****************************************************************************/
-
-
 package com.equo.chromium.swt.internal.spi;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.cef.browser.CefBrowser;
@@ -36,6 +41,24 @@ import org.cef.browser.CefMessageRouter.CefMessageRouterConfig;
 import org.cef.callback.CefQueryCallback;
 import org.cef.handler.CefMessageRouterHandlerAdapter;
 
+import com.equo.chromium.internal.LatencyHistogram;
+import com.equo.chromium.internal.ThreadPools;
+import com.github.cliftonlabs.json_simple.JsonArray;
+import com.github.cliftonlabs.json_simple.JsonException;
+import com.github.cliftonlabs.json_simple.JsonObject;
+import com.github.cliftonlabs.json_simple.Jsoner;
+
+/**
+ * Answers the equoSend queries on a shared worker pool, which uses virtual
+ * threads when available and otherwise keeps up to chromium.comm_threads
+ * platform threads, starting extra ones while they are all busy so handlers
+ * may block waiting for other queries. Queries prefixed with &amp;- are answered in order within their
+ * browser, or within their frame when chromium.comm_order_scope is frame.
+ * Queries prefixed with &amp;* carry a JSON array of messages sent together by
+ * window.equoSendBatched. Persistent queries prefixed with &amp;~ are streams
+ * of window.equoSendStream, answered with a chunk per success call while the
+ * page grants credits with &amp;^ queries.
+ */
 public class CommRouterHandler extends CefMessageRouterHandlerAdapter {
 
 	public static CefMessageRouter createRouter() {
@@ -43,9 +66,239 @@ public class CommRouterHandler extends CefMessageRouterHandlerAdapter {
 		return CefMessageRouter.create(config);
 	}
 
+	/**
+	 * window.equoSendBatched(message) returns a promise like equoSend, but
+	 * buffers the messages until the next animation frame, or for
+	 * equoSendBatched.delay milliseconds when greater than 0, and sends them in a
+	 * single query. The promise resolves with the response of its message, or
+	 * rejects with {errorCode, message}.
+	 */
+	private static final String BATCH_SCRIPT = "(function() {\n"
+			+ "  var queue = [], scheduled = false;\n"
+			+ "  function flush() {\n"
+			+ "    scheduled = false;\n"
+			+ "    if (!queue.length) return;\n"
+			+ "    var batch = queue;\n"
+			+ "    queue = [];\n"
+			+ "    function fail(code, message) {\n"
+			+ "      batch.forEach(function(m) { m.reject({errorCode: code, message: message}); });\n"
+			+ "    }\n"
+			+ "    window.equoSend({\n"
+			+ "      request: '&*' + JSON.stringify(batch.map(function(m) { return m.message; })),\n"
+			+ "      persistent: false,\n"
+			+ "      onSuccess: function(response) {\n"
+			+ "        var results;\n"
+			+ "        try { results = JSON.parse(response); } catch (e) { return fail(-1, e.toString()); }\n"
+			+ "        batch.forEach(function(m, i) {\n"
+			+ "          var result = results[i] || {};\n"
+			+ "          if ('e' in result) m.reject({errorCode: result.e, message: result.m});\n"
+			+ "          else m.resolve(result.r);\n"
+			+ "        });\n"
+			+ "      },\n"
+			+ "      onFailure: fail\n"
+			+ "    });\n"
+			+ "  }\n"
+			+ "  function schedule() {\n"
+			+ "    if (scheduled) return;\n"
+			+ "    scheduled = true;\n"
+			+ "    var delay = window.equoSendBatched.delay;\n"
+			+ "    if (delay > 0 || typeof requestAnimationFrame !== 'function' || document.hidden)\n"
+			+ "      setTimeout(flush, delay);\n"
+			+ "    else\n"
+			+ "      requestAnimationFrame(flush);\n"
+			+ "  }\n"
+			+ "  window.equoSendBatched = function(message) {\n"
+			+ "    return new Promise(function(resolve, reject) {\n"
+			+ "      queue.push({message: String(message), resolve: resolve, reject: reject});\n"
+			+ "      if (queue.length >= window.equoSendBatched.maxSize) flush();\n"
+			+ "      else schedule();\n"
+			+ "    });\n"
+			+ "  };\n"
+			+ "  window.equoSendBatched.delay = 0;\n"
+			+ "  window.equoSendBatched.maxSize = 500;\n"
+			+ "})();";
+
+	/**
+	 * window.equoSendStream(message, {window}) returns an async iterator of the
+	 * chunks of the response. At most window chunks, 4 by default, are sent
+	 * ahead of the ones consumed, and returning from the iteration cancels the
+	 * stream. Each query response is prefixed with d for a chunk or e for the
+	 * end. Stream ids are prefixed with a random token of the script context, so
+	 * they don't collide with the ones of a previous document in the frame.
+	 */
+	private static final String STREAM_SCRIPT = "(function() {\n"
+			+ "  var context = Math.random().toString(36).substring(2), nextId = 0;\n"
+			+ "  window.equoSendStream = function(message, options) {\n"
+			+ "    var id = context + '.' + (++nextId), size = (options && options.window) || 4;\n"
+			+ "    var chunks = [], waiters = [], done = false, error = null, consumed = 0, queryId;\n"
+			+ "    function settle() {\n"
+			+ "      while (waiters.length) {\n"
+			+ "        if (chunks.length) {\n"
+			+ "          waiters.shift().resolve({value: chunks.shift(), done: false});\n"
+			+ "          if (!done && ++consumed >= Math.max(1, size >> 1)) {\n"
+			+ "            window.equoSend({request: '&^' + id + ':' + consumed, persistent: false});\n"
+			+ "            consumed = 0;\n"
+			+ "          }\n"
+			+ "        } else if (error) {\n"
+			+ "          waiters.shift().reject(error);\n"
+			+ "        } else if (done) {\n"
+			+ "          waiters.shift().resolve({value: undefined, done: true});\n"
+			+ "        } else {\n"
+			+ "          break;\n"
+			+ "        }\n"
+			+ "      }\n"
+			+ "    }\n"
+			+ "    queryId = window.equoSend({\n"
+			+ "      request: '&~' + id + ':' + size + ':' + message,\n"
+			+ "      persistent: true,\n"
+			+ "      onSuccess: function(response) {\n"
+			+ "        if (response.charAt(0) === 'e') {\n"
+			+ "          done = true;\n"
+			+ "          window.equoSendCancel(queryId);\n"
+			+ "        } else {\n"
+			+ "          chunks.push(response.substring(1));\n"
+			+ "        }\n"
+			+ "        settle();\n"
+			+ "      },\n"
+			+ "      onFailure: function(code, message) {\n"
+			+ "        error = {errorCode: code, message: message};\n"
+			+ "        done = true;\n"
+			+ "        settle();\n"
+			+ "      }\n"
+			+ "    });\n"
+			+ "    var iterator = {\n"
+			+ "      next: function() {\n"
+			+ "        return new Promise(function(resolve, reject) {\n"
+			+ "          waiters.push({resolve: resolve, reject: reject});\n"
+			+ "          settle();\n"
+			+ "        });\n"
+			+ "      },\n"
+			+ "      'return': function() {\n"
+			+ "        if (!done) {\n"
+			+ "          done = true;\n"
+			+ "          window.equoSendCancel(queryId);\n"
+			+ "        }\n"
+			+ "        chunks = [];\n"
+			+ "        error = null;\n"
+			+ "        settle();\n"
+			+ "        return Promise.resolve({value: undefined, done: true});\n"
+			+ "      }\n"
+			+ "    };\n"
+			+ "    iterator[Symbol.asyncIterator] = function() { return iterator; };\n"
+			+ "    return iterator;\n"
+			+ "  };\n"
+			+ "})();";
+
+	/**
+	 * @return The script extensions defining window.equoSendBatched,
+	 *         window.equoSendStream and window.equoSendBinary.
+	 */
+	public static List<CefMessageRouter> createScriptExtensions() {
+		return ScriptExtension.createRouter(Arrays.asList(BATCH_SCRIPT, STREAM_SCRIPT, BinaryResourceHandler.SCRIPT));
+	}
+
+	private static final int THREADS = Integer.getInteger("chromium.comm_threads",
+			Math.max(8, Runtime.getRuntime().availableProcessors() * 4));
+	private static final boolean FRAME_ORDER = "frame".equals(System.getProperty("chromium.comm_order_scope"));
+	private static final ExecutorService threadPool = ThreadPools.newWorkerPool("chromium-Comm", THREADS);
+	private static final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+	private static final AtomicInteger queued = new AtomicInteger();
+	private static final AtomicInteger active = new AtomicInteger();
+	private static final LatencyHistogram waitLatency = new LatencyHistogram();
+	private static final LatencyHistogram handleLatency = new LatencyHistogram();
+	private static final Map<String, Stream> streams = new ConcurrentHashMap<>();
+	private static final Map<String, Stream> streamsByQuery = new ConcurrentHashMap<>();
+
+	/**
+	 * Ordered queries of a browser or frame. Only accessed while computing its
+	 * entry in lanes, and removed once empty.
+	 */
+	private static class Lane {
+		final Queue<Runnable> queue = new ArrayDeque<>();
+		boolean running;
+	}
+
+	/**
+	 * Response of a streaming query. Chunks are pulled from the iterator on the
+	 * pool only while the page has credits left.
+	 */
+	private static class Stream {
+		final String key;
+		final String queryKey;
+		final CefQueryCallback callback;
+		final AtomicInteger credits;
+		final AtomicBoolean pumping = new AtomicBoolean();
+		volatile Iterator<String> chunks;
+		volatile boolean closed;
+
+		Stream(String key, String queryKey, CefQueryCallback callback, int credits) {
+			this.key = key;
+			this.queryKey = queryKey;
+			this.callback = callback;
+			this.credits = new AtomicInteger(credits);
+		}
+
+		void start(Iterator<String> chunks) {
+			this.chunks = chunks;
+			pump();
+		}
+
+		void grant(int count) {
+			credits.addAndGet(count);
+			pump();
+		}
+
+		private void pump() {
+			if (chunks != null && !closed && credits.get() > 0 && pumping.compareAndSet(false, true)) {
+				threadPool.execute(this::send);
+			}
+		}
+
+		private void send() {
+			try {
+				while (!closed && credits.get() > 0) {
+					if (!chunks.hasNext()) {
+						callback.success("e");
+						close();
+						return;
+					}
+					String chunk = chunks.next();
+					credits.decrementAndGet();
+					if (!closed) {
+						callback.success("d" + chunk);
+					}
+				}
+			} catch (CommMessageError e) {
+				callback.failure(e.getErrorCode(), e.getLocalizedMessage());
+				close();
+				return;
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				callback.failure(-1, e.toString());
+				close();
+				return;
+			} finally {
+				pumping.set(false);
+			}
+			// credits may have been granted after the loop ended
+			pump();
+		}
+
+		void close() {
+			closed = true;
+			streams.remove(key, this);
+			streamsByQuery.remove(queryKey, this);
+			if (chunks instanceof AutoCloseable) {
+				try {
+					((AutoCloseable) chunks).close();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
 	private CommunicationManager commManager;
-	private static ExecutorService threadPool = Executors.newCachedThreadPool(new DaemonThreadFactory());
-	private static ExecutorService queueThread = Executors.newSingleThreadExecutor(new DaemonThreadFactory());
 
 	public CommRouterHandler(CommunicationManager commManager) {
 		this.commManager = commManager;
@@ -62,38 +315,222 @@ public class CommRouterHandler extends CefMessageRouterHandlerAdapter {
 		}
 	}
 
+	/**
+	 * Answers each message of a batch in order with an entry of a JSON array:
+	 * {"r": response} or {"e": errorCode, "m": message}, or an empty object when
+	 * the message has no response.
+	 */
+	private void handleBatch(String request, CefQueryCallback callback) {
+		JsonArray messages;
+		try {
+			messages = (JsonArray) Jsoner.deserialize(request);
+		} catch (JsonException | ClassCastException e) {
+			callback.failure(-1, "Invalid batch: " + e.getMessage());
+			return;
+		}
+		JsonArray results = new JsonArray();
+		for (Object message : messages) {
+			JsonObject result = new JsonObject();
+			try {
+				Optional<String> response = this.commManager.receiveMessage(String.valueOf(message));
+				if (response.isPresent()) {
+					result.put("r", response.get());
+				}
+			} catch (CommMessageError e) {
+				result.put("e", e.getErrorCode());
+				result.put("m", e.getLocalizedMessage());
+			}
+			results.add(result);
+		}
+		callback.success(results.toJson());
+	}
+
+	/**
+	 * Starts a stream from a request with the format id:window:message.
+	 */
+	private void startStream(CefBrowser browser, CefFrame frame, long queryId, String request,
+			CefQueryCallback callback) {
+		int idEnd = request.indexOf(':');
+		int windowEnd = idEnd < 0 ? -1 : request.indexOf(':', idEnd + 1);
+		int window;
+		try {
+			window = Integer.parseInt(request.substring(idEnd + 1, windowEnd));
+		} catch (RuntimeException e) {
+			callback.failure(-1, "Invalid stream request");
+			return;
+		}
+		String key = streamKey(browser, frame, request.substring(0, idEnd));
+		Stream stream = new Stream(key, browser.getIdentifier() + "/" + queryId, callback, window);
+		Stream previous = streams.put(key, stream);
+		if (previous != null) {
+			previous.close();
+		}
+		streamsByQuery.put(stream.queryKey, stream);
+		String message = request.substring(windowEnd + 1);
+		threadPool.execute(measure(() -> {
+			try {
+				stream.start(commManager.receiveMessageStream(message));
+			} catch (CommMessageError e) {
+				callback.failure(e.getErrorCode(), e.getLocalizedMessage());
+				stream.close();
+			}
+		}));
+	}
+
+	/**
+	 * Grants credits to a stream from a request with the format id:count.
+	 */
+	private void grantStream(CefBrowser browser, CefFrame frame, String request, CefQueryCallback callback) {
+		int separator = request.indexOf(':');
+		Stream stream = separator < 0 ? null : streams.get(streamKey(browser, frame, request.substring(0, separator)));
+		if (stream != null) {
+			try {
+				stream.grant(Integer.parseInt(request.substring(separator + 1)));
+			} catch (NumberFormatException e) {
+				callback.failure(-1, "Invalid stream credits");
+				return;
+			}
+		}
+		callback.success("");
+	}
+
+	private static String streamKey(CefBrowser browser, CefFrame frame, String id) {
+		return browser.getIdentifier() + "/" + (frame != null ? frame.getIdentifier() : "") + "/" + id;
+	}
+
+	@Override
+	public void onQueryCanceled(CefBrowser browser, CefFrame frame, long queryId) {
+		Stream stream = streamsByQuery.get(browser.getIdentifier() + "/" + queryId);
+		if (stream != null) {
+			stream.close();
+		}
+	}
+
 	@Override
 	public boolean onQuery(CefBrowser browser, CefFrame frame, long queryId, String request, boolean persistent,
 			CefQueryCallback callback) {
-		if (request.startsWith("&-")) {
-			queueThread.execute(() -> {
+		if (request.startsWith("&~") && persistent) {
+			startStream(browser, frame, queryId, request.substring(2), callback);
+		} else if (request.startsWith("&^")) {
+			grantStream(browser, frame, request.substring(2), callback);
+		} else if (request.startsWith("&*")) {
+			threadPool.execute(measure(() -> {
+				handleBatch(request.substring(2), callback);
+			}));
+		} else if (request.startsWith("&-")) {
+			String key = FRAME_ORDER && frame != null ? browser.getIdentifier() + "/" + frame.getIdentifier()
+					: String.valueOf(browser.getIdentifier());
+			executeOrdered(key, measure(() -> {
 				handleRequest(request.substring(2), callback);
-			});
+			}));
 		} else {
-			threadPool.execute(() -> {
+			threadPool.execute(measure(() -> {
 				handleRequest(request, callback);
-			});
+			}));
 		}
 		return true;
 	}
 
-	private static class DaemonThreadFactory implements ThreadFactory {
-		private final AtomicInteger threadNumber = new AtomicInteger(1);
-		private final ThreadGroup group;
-		private final String namePrefix;
+	/**
+	 * Runs a task of another comm channel on the shared pool.
+	 */
+	static void execute(Runnable task) {
+		threadPool.execute(measure(task));
+	}
+
+	private static Runnable measure(Runnable task) {
+		long submitted = System.nanoTime();
+		queued.incrementAndGet();
+		return () -> {
+			long started = System.nanoTime();
+			queued.decrementAndGet();
+			active.incrementAndGet();
+			waitLatency.record(started - submitted);
+			try {
+				task.run();
+			} finally {
+				active.decrementAndGet();
+				handleLatency.record(System.nanoTime() - started);
+			}
+		};
+	}
+
+	private static void executeOrdered(String key, Runnable task) {
+		boolean[] start = new boolean[1];
+		lanes.compute(key, (k, current) -> {
+			if (current == null) {
+				current = new Lane();
+			}
+			current.queue.add(task);
+			if (!current.running) {
+				current.running = start[0] = true;
+			}
+			return current;
+		});
+		if (start[0]) {
+			threadPool.execute(() -> drain(key));
+		}
+	}
 
-		DaemonThreadFactory() {
-			java.lang.SecurityManager s = System.getSecurityManager();
-			group = (s != null) ? s.getThreadGroup() : Thread.currentThread().getThreadGroup();
-			namePrefix = "comm-pool-thread-";
+	private static void drain(String key) {
+		Runnable[] next = new Runnable[1];
+		while (true) {
+			lanes.compute(key, (k, lane) -> {
+				next[0] = lane.queue.poll();
+				if (next[0] == null) {
+					lane.running = false;
+					return null;
+				}
+				return lane;
+			});
+			if (next[0] == null) {
+				return;
+			}
+			try {
+				next[0].run();
+			} catch (Throwable t) {
+				t.printStackTrace();
+			}
 		}
+	}
+
+	/**
+	 * @return The number of queries being answered.
+	 */
+	public static int getActiveCount() {
+		return active.get();
+	}
+
+	/**
+	 * @return The number of queries waiting to be answered.
+	 */
+	public static int getQueuedCount() {
+		return queued.get();
+	}
 
-		public Thread newThread(Runnable r) {
-			Thread t = new Thread(group, r, namePrefix + threadNumber.getAndIncrement(), 0);
-			t.setDaemon(true);
-			t.setPriority(Thread.NORM_PRIORITY);
-			return t;
+	/**
+	 * @return The number of platform threads in the pool, or the number of
+	 *         queries being answered when using virtual threads.
+	 */
+	public static int getThreadCount() {
+		if (threadPool instanceof ThreadPoolExecutor) {
+			return ((ThreadPoolExecutor) threadPool).getPoolSize();
 		}
+		return active.get();
+	}
+
+	/**
+	 * @return The time queries waited before being answered.
+	 */
+	public static LatencyHistogram getWaitLatency() {
+		return waitLatency;
+	}
+
+	/**
+	 * @return The time taken to answer queries.
+	 */
+	public static LatencyHistogram getHandleLatency() {
+		return handleLatency;
 	}
 
 }
@@ -23,14 +23,41 @@
 
 package com.equo.chromium.swt.internal.spi;
 
+import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.Optional;
 import java.util.ServiceLoader;
 
 public interface CommunicationManager {
 
+	/**
+	 * Answers a message sent with window.equoSend. Called from worker threads,
+	 * and may block, also waiting for the answer of other messages.
+	 */
 	public Optional<String> receiveMessage(String message);
 
+	/**
+	 * Answers a message sent with window.equoSendStream with a sequence of chunks.
+	 * The iterator is pulled from a worker thread only while the page has room
+	 * for more chunks, and closed, if AutoCloseable, when the page stops
+	 * iterating. Defaults to the response of receiveMessage as a single chunk.
+	 */
+	default public Iterator<String> receiveMessageStream(String message) {
+		Optional<String> response = receiveMessage(message);
+		return response.isPresent() ? Collections.singletonList(response.get()).iterator()
+				: Collections.<String>emptyIterator();
+	}
+
+	/**
+	 * Answers a message sent with window.equoSendBinary, whose payload and
+	 * response are raw bytes. The payload is only valid during the call. By
+	 * default there is no response.
+	 */
+	default public Optional<ByteBuffer> receiveBinaryMessage(String message, ByteBuffer payload) {
+		return Optional.empty();
+	}
+
 	public static CommunicationManager get() {
 		ServiceLoader<CommunicationManager> serviceLoader = ServiceLoader.load(CommunicationManager.class,
 				CommunicationManager.class.getClassLoader());
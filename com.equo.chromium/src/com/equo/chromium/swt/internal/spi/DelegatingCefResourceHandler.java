@@ -24,11 +24,16 @@
 package com.equo.chromium.swt.internal.spi;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.cef.callback.CefCallback;
 import org.cef.handler.CefResourceHandler;
@@ -38,8 +43,19 @@ import org.cef.network.CefRequest;
 import org.cef.network.CefResponse;
 
 public class DelegatingCefResourceHandler implements CefResourceHandler {
-	private InputStream responseData;
+	private static final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+		Thread thread = new Thread(r, "chromium-SchemeHandler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private volatile ResponseBody responseData;
 	private Boolean processRequest;
+	private String acceptEncoding;
+	private volatile Map<String, String> asyncHeaders;
+	private volatile boolean cancelled;
+	private CompletableFuture<ByteBuffer> pendingRead;
+	private ByteBuffer readChunk;
 
 	private final SchemeHandler schemeHandler;
 
@@ -52,6 +68,7 @@ public class DelegatingCefResourceHandler implements CefResourceHandler {
 		if (processRequest == null) {
 			Map<String, String> headers = new HashMap<String, String>();
 			request.getHeaderMap(headers);
+			acceptEncoding = getHeader(headers, "Accept-Encoding");
 			boolean shouldProcessRequest = schemeHandler.processRequest(request.getURL(), request.getMethod(), headers);
 			processRequest = Boolean.valueOf(shouldProcessRequest);
 		}
@@ -59,16 +76,43 @@ public class DelegatingCefResourceHandler implements CefResourceHandler {
 		boolean shouldProcessRequest = processRequest.booleanValue();
 
 		if (shouldProcessRequest && callback != null) {
-			callback.Continue();
+			Map<String, String> responseHeaders = new HashMap<String, String>();
+			CompletionStage<ResponseBody> body = schemeHandler.getResponseBodyAsync(responseHeaders);
+			if (body == null) {
+				callback.Continue();
+			} else {
+				body.whenComplete((data, t) -> {
+					if (t != null) {
+						t.printStackTrace();
+						responseHeaders.put("X-Status-Code", "500");
+					}
+					responseData = data;
+					asyncHeaders = responseHeaders;
+					if (cancelled) {
+						cancel();
+					} else {
+						callback.Continue();
+					}
+				});
+			}
 		}
 		return shouldProcessRequest;
 	}
 
 	@Override
 	public void getResponseHeaders(CefResponse response, IntRef responseLength, StringRef redirectUrl) {
-		Map<String, String> responseHeaders = new HashMap<String, String>();
-		response.getHeaderMap(responseHeaders);
-		responseData = schemeHandler.getResponseData(responseHeaders);
+		Map<String, String> responseHeaders = asyncHeaders;
+		if (responseHeaders == null) {
+			responseHeaders = new HashMap<String, String>();
+			response.getHeaderMap(responseHeaders);
+			try {
+				responseData = schemeHandler.getResponseBody(responseHeaders);
+			} catch (IOException e) {
+				e.printStackTrace();
+				responseData = null;
+			}
+		}
+		handleContentEncoding(responseHeaders);
 		String userStatusCodeStringify = responseHeaders.remove("X-Status-Code");
 		String contentType = responseHeaders.get("Content-Type");
 		int statusCode = parseStatusCode(responseData, userStatusCodeStringify);
@@ -96,11 +140,65 @@ public class DelegatingCefResourceHandler implements CefResourceHandler {
 			}
 
 			response.setHeaderMap(responseHeaders);
+			long length = responseData != null ? responseData.getLength() : ResponseBody.UNKNOWN_LENGTH;
+			if (length >= 0 && length <= Integer.MAX_VALUE) {
+				responseLength.set((int) length);
+			}
 		}
 		response.setStatus(statusCode);
 	}
 
-	private Integer parseStatusCode(InputStream responseData, String userStatusCodeStringify) {
+	/**
+	 * Serves compressed bodies with their Content-Encoding, decompressing gzip
+	 * only if the request does not accept it.
+	 */
+	private void handleContentEncoding(Map<String, String> responseHeaders) {
+		String headerName = null;
+		for (String name : responseHeaders.keySet()) {
+			if ("Content-Encoding".equalsIgnoreCase(name)) {
+				headerName = name;
+			}
+		}
+		if (responseData == null) {
+			return;
+		}
+		String encoding = responseData.getContentEncoding();
+		if (encoding == null && headerName != null) {
+			encoding = responseHeaders.get(headerName).trim();
+			if (encoding.isEmpty() || "identity".equalsIgnoreCase(encoding)) {
+				return;
+			}
+			responseData.encoded(encoding);
+		}
+		if (encoding == null) {
+			return;
+		}
+		if (headerName != null) {
+			responseHeaders.remove(headerName);
+		}
+		if ("gzip".equalsIgnoreCase(encoding) && !ResponseBody.accepts(acceptEncoding, "gzip")) {
+			try {
+				responseData = responseData.gunzip();
+			} catch (IOException e) {
+				e.printStackTrace();
+				cancel();
+				responseHeaders.put("X-Status-Code", "500");
+			}
+		} else {
+			responseHeaders.put("Content-Encoding", encoding);
+		}
+	}
+
+	private static String getHeader(Map<String, String> headers, String name) {
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			if (name.equalsIgnoreCase(header.getKey())) {
+				return header.getValue();
+			}
+		}
+		return null;
+	}
+
+	private Integer parseStatusCode(ResponseBody responseData, String userStatusCodeStringify) {
 		if (userStatusCodeStringify != null) {
 			try {
 				Integer userStatusCode = Integer.valueOf(userStatusCodeStringify);
@@ -142,12 +240,16 @@ public class DelegatingCefResourceHandler implements CefResourceHandler {
 
 	@Override
 	public boolean readResponse(byte[] dataOut, int bytesToRead, IntRef bytesRead, CefCallback callback) {
+		ResponseBody responseData = this.responseData;
 		if (responseData == null) {
 			return false;
 		}
+		if (asyncHeaders != null && !responseData.isBuffered()) {
+			return readResponseAsync(responseData, dataOut, bytesToRead, bytesRead, callback);
+		}
 
 		try {
-			int bytesReadPrim = responseData.read(dataOut, 0, bytesToRead);
+			int bytesReadPrim = responseData.read(dataOut, bytesToRead);
 			if (bytesReadPrim == -1) {
 				cancel();
 				return false;
@@ -162,15 +264,64 @@ public class DelegatingCefResourceHandler implements CefResourceHandler {
 		}
 	}
 
+	/**
+	 * Reads bodies of asynchronous handlers that may block outside of the CEF IO
+	 * thread, resuming CEF with the callback once a chunk is ready.
+	 */
+	private boolean readResponseAsync(ResponseBody responseData, byte[] dataOut, int bytesToRead, IntRef bytesRead,
+			CefCallback callback) {
+		if (readChunk == null && pendingRead != null) {
+			if (!pendingRead.isDone()) {
+				bytesRead.set(0);
+				return true;
+			}
+			try {
+				readChunk = pendingRead.join();
+			} catch (CompletionException e) {
+				e.getCause().printStackTrace();
+			} finally {
+				pendingRead = null;
+			}
+			if (readChunk == null) {
+				cancel();
+				bytesRead.set(0);
+				return false;
+			}
+		}
+		if (readChunk != null) {
+			int length = Math.min(bytesToRead, readChunk.remaining());
+			readChunk.get(dataOut, 0, length);
+			if (!readChunk.hasRemaining()) {
+				readChunk = null;
+			}
+			bytesRead.set(length);
+			return true;
+		}
+		pendingRead = CompletableFuture.supplyAsync(() -> {
+			byte[] chunk = new byte[bytesToRead];
+			try {
+				int read = responseData.read(chunk, bytesToRead);
+				return read < 0 ? null : ByteBuffer.wrap(chunk, 0, read);
+			} catch (IOException e) {
+				throw new CompletionException(e);
+			}
+		}, executor);
+		pendingRead.whenComplete((chunk, t) -> callback.Continue());
+		bytesRead.set(0);
+		return true;
+	}
+
 	@Override
 	public void cancel() {
+		cancelled = true;
+		ResponseBody responseData = this.responseData;
 		try {
 			if (responseData != null) {
 				responseData.close();
 			}
 		} catch (IOException e) {
 		} finally {
-			responseData = null;
+			this.responseData = null;
 		}
 	}
 
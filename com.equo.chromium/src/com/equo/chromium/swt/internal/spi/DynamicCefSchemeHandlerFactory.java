@@ -24,6 +24,11 @@
 package com.equo.chromium.swt.internal.spi;
 
 import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import org.cef.browser.CefBrowser;
 import org.cef.browser.CefFrame;
@@ -32,6 +37,30 @@ import org.cef.handler.CefResourceHandler;
 import org.cef.network.CefRequest;
 
 public class DynamicCefSchemeHandlerFactory implements CefSchemeHandlerFactory {
+	private static final long RESOLUTION_TTL = TimeUnit.SECONDS.toNanos(1);
+	private static final int MAX_RESOLUTIONS = 1024;
+	private static final Map<String, Resolution> resolutions = Collections
+			.synchronizedMap(new LinkedHashMap<String, Resolution>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Resolution> eldest) {
+					return size() > MAX_RESOLUTIONS;
+				}
+			});
+
+	/**
+	 * Handler factory the manager resolved for a scheme and authority. Only found
+	 * handlers are kept, so a handler registered later is used at once, and they
+	 * expire since managers can remove handlers without notice.
+	 */
+	private static class Resolution {
+		final Supplier<SchemeHandler> factory;
+		final long expires;
+
+		Resolution(Supplier<SchemeHandler> factory, long expires) {
+			this.factory = factory;
+			this.expires = expires;
+		}
+	}
 
 	private SchemeHandlerManager schemeHandlerManager;
 
@@ -41,28 +70,88 @@ public class DynamicCefSchemeHandlerFactory implements CefSchemeHandlerFactory {
 
 	@Override
 	public CefResourceHandler create(CefBrowser browser, CefFrame frame, String schemeName, CefRequest request) {
+		String url = request.getURL();
 		String TEXT_URL = System.getProperty("chromium.setTextAsUrl","");
 		// Return null when request start with setTextAsUrl and not constains textPath (default)
-		if (!TEXT_URL.isEmpty() && request.getURL().startsWith(TEXT_URL)) {
+		if (!TEXT_URL.isEmpty() && url.startsWith(TEXT_URL)) {
 			// Popup dont work with data url
 			if (browser.isPopup() || !"setText".equals(request.getHeaderByName("chromium"))) {
 				return null;
 			}
 		}
 		try {
-			URI requestUri = URI.create(request.getURL());
-			final SchemeHandler schemeHandler = schemeHandlerManager.getSchemeHandler(schemeName,
-					requestUri.getAuthority());
+			final SchemeHandler schemeHandler = resolve(schemeName, getAuthority(url));
 			if (schemeHandler != null) {
-				CefResourceHandler handler = new DelegatingCefResourceHandler(schemeHandler);
-				if (handler.processRequest(request, null)) {
-					return handler;
-				}
+				return ResponseCache.getDefault().createHandler(request, schemeHandler);
 			}
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	/**
+	 * Discards the cached resolution of a scheme and authority. Must be called
+	 * when its handler is added or removed.
+	 */
+	public static void invalidate(String scheme, String authority) {
+		resolutions.remove(getKey(scheme, authority));
+	}
+
+	public static void invalidateAll() {
+		resolutions.clear();
+	}
+
+	private SchemeHandler resolve(String scheme, String authority) {
+		String key = getKey(scheme, authority);
+		Resolution resolution = resolutions.get(key);
+		long now = System.nanoTime();
+		if (resolution == null || now - resolution.expires >= 0) {
+			Supplier<SchemeHandler> factory = schemeHandlerManager.getSchemeHandlerFactory(scheme, authority);
+			if (factory == null) {
+				resolutions.remove(key);
+				return null;
+			}
+			resolution = new Resolution(factory, now + RESOLUTION_TTL);
+			resolutions.put(key, resolution);
+		}
+		SchemeHandler handler = resolution.factory.get();
+		if (handler == null) {
+			resolutions.remove(key, resolution);
+		}
+		return handler;
+	}
+
+	private static String getKey(String scheme, String authority) {
+		return authority == null ? scheme + ":" : scheme + "://" + authority;
+	}
+
+	/**
+	 * Same result as URI.create(url).getAuthority() for the URLs Chromium passes
+	 * to scheme handlers, without parsing the whole URL.
+	 */
+	static String getAuthority(String url) {
+		int colon = url.indexOf(':');
+		if (colon < 0 || !url.startsWith("//", colon + 1)) {
 			return null;
-		} catch (Throwable t) {
+		}
+		int start = colon + 3;
+		int end = start;
+		while (end < url.length()) {
+			char c = url.charAt(end);
+			if (c == '/' || c == '?' || c == '#') {
+				break;
+			}
+			end++;
+		}
+		if (end == start) {
 			return null;
 		}
+		String authority = url.substring(start, end);
+		if (authority.indexOf('%') >= 0) {
+			return URI.create(url).getAuthority();
+		}
+		return authority;
 	}
 
 }
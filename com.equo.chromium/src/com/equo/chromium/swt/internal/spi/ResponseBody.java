@@ -0,0 +1,334 @@
+/****************************************************************************
+**
+** Copyright (C) 2024 Equo
+**
+** This file is part of Equo Chromium.
+**
+** Commercial License Usage
+** Licensees holding valid commercial Equo licenses may use this file in
+** accordance with the commercial license agreement provided with the
+** Software or, alternatively, in accordance with the terms contained in
+** a written agreement between you and Equo. For licensing terms
+** and conditions see https://www.equo.dev/terms.
+**
+** GNU General Public License Usage
+** Alternatively, this file may be used under the terms of the GNU
+** General Public License version 3 as published by the Free Software
+** Foundation. Please review the following
+** information to ensure the GNU General Public License requirements will
+** be met: https://www.gnu.org/licenses/gpl-3.0.html.
+**
+****************************************************************************/
+package com.equo.chromium.swt.internal.spi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Body of a scheme handler response. Bodies in memory or in files are copied
+ * straight into the buffer provided by Chromium, and their length is reported
+ * so Chromium does not need to read until the end of the data to know it.
+ */
+public abstract class ResponseBody implements Closeable {
+	/**
+	 * Unknown body length.
+	 */
+	public static final long UNKNOWN_LENGTH = -1;
+
+	/**
+	 * Files are read into memory below this size, and memory-mapped from it. A
+	 * mapped file can't be deleted or rewritten on Windows until it's unmapped.
+	 */
+	private static final long MMAP_THRESHOLD = Long.getLong("chromium.mmap_threshold", 1024 * 1024);
+
+	private final long length;
+	private String contentEncoding;
+
+	ResponseBody(long length) {
+		this.length = length;
+	}
+
+	/**
+	 * @return The body length in bytes, or {@link #UNKNOWN_LENGTH}.
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Marks the body as compressed, so it is served with the given
+	 * Content-Encoding and decompressed by Chromium.
+	 * 
+	 * @param contentEncoding The encoding, such as br or gzip.
+	 * @return This body.
+	 */
+	public ResponseBody encoded(String contentEncoding) {
+		this.contentEncoding = contentEncoding;
+		return this;
+	}
+
+	/**
+	 * @return The Content-Encoding of the body, or null if it is not compressed.
+	 */
+	public String getContentEncoding() {
+		return contentEncoding;
+	}
+
+	/**
+	 * Reads up to length bytes into out.
+	 * 
+	 * @return The number of bytes read, or -1 at the end of the body.
+	 */
+	abstract int read(byte[] out, int length) throws IOException;
+
+	/**
+	 * @return true if reading never blocks.
+	 */
+	boolean isBuffered() {
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+	}
+
+	/**
+	 * The remaining bytes of the buffer. The buffer is not copied and must not be
+	 * modified while the response is read.
+	 */
+	public static ResponseBody of(ByteBuffer buffer) {
+		return new BufferBody(buffer.slice());
+	}
+
+	/**
+	 * The whole file, read into memory when small, memory-mapped when it fits
+	 * in a buffer.
+	 */
+	public static ResponseBody of(Path file) throws IOException {
+		return of(FileChannel.open(file, StandardOpenOption.READ));
+	}
+
+	/**
+	 * The file, or its precompressed sibling with a .br or .gz extension when one
+	 * exists and its encoding is accepted.
+	 * 
+	 * @param acceptEncoding The Accept-Encoding request header. If null, the
+	 *                       encodings Chromium decodes are accepted.
+	 */
+	public static ResponseBody of(Path file, String acceptEncoding) throws IOException {
+		if (accepts(acceptEncoding, "br")) {
+			Path compressed = file.resolveSibling(file.getFileName() + ".br");
+			if (Files.isRegularFile(compressed)) {
+				return of(compressed).encoded("br");
+			}
+		}
+		if (accepts(acceptEncoding, "gzip")) {
+			Path compressed = file.resolveSibling(file.getFileName() + ".gz");
+			if (Files.isRegularFile(compressed)) {
+				return of(compressed).encoded("gzip");
+			}
+		}
+		return of(file);
+	}
+
+	/**
+	 * @param acceptEncoding The Accept-Encoding request header, or null.
+	 * @return true if the header accepts the encoding.
+	 */
+	static boolean accepts(String acceptEncoding, String encoding) {
+		if (acceptEncoding == null) {
+			return "br".equals(encoding) || "gzip".equals(encoding) || "deflate".equals(encoding);
+		}
+		boolean wildcard = false;
+		for (String token : acceptEncoding.split(",")) {
+			String[] parts = token.split(";");
+			String name = parts[0].trim();
+			boolean rejected = false;
+			for (int i = 1; i < parts.length; i++) {
+				String param = parts[i].trim();
+				if (param.startsWith("q=")) {
+					try {
+						rejected = Double.parseDouble(param.substring(2)) <= 0;
+					} catch (NumberFormatException e) {
+						rejected = true;
+					}
+				}
+			}
+			if (name.equalsIgnoreCase(encoding)) {
+				return !rejected;
+			}
+			if ("*".equals(name)) {
+				wildcard = !rejected;
+			}
+		}
+		return wildcard;
+	}
+
+	/**
+	 * @return A body with the gzip decompressed contents of this body.
+	 */
+	ResponseBody gunzip() throws IOException {
+		ResponseBody body = this;
+		InputStream stream = new InputStream() {
+			private final byte[] single = new byte[1];
+			private byte[] buffer = new byte[0];
+
+			@Override
+			public int read() throws IOException {
+				return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (off == 0) {
+					return body.read(b, len);
+				}
+				if (buffer.length < len) {
+					buffer = new byte[len];
+				}
+				int read = body.read(buffer, len);
+				if (read > 0) {
+					System.arraycopy(buffer, 0, b, off, read);
+				}
+				return read;
+			}
+
+			@Override
+			public void close() throws IOException {
+				body.close();
+			}
+		};
+		return of(new GZIPInputStream(stream), UNKNOWN_LENGTH);
+	}
+
+	/**
+	 * The channel contents from its current position to its end. The channel is
+	 * closed when the response ends.
+	 */
+	public static ResponseBody of(FileChannel channel) throws IOException {
+		try {
+			long position = channel.position();
+			long length = Math.max(0, channel.size() - position);
+			if (length < MMAP_THRESHOLD && length <= Integer.MAX_VALUE) {
+				ByteBuffer data = ByteBuffer.allocate((int) length);
+				while (data.hasRemaining()) {
+					if (channel.read(data) < 0) {
+						break;
+					}
+				}
+				channel.close();
+				data.flip();
+				return new BufferBody(data);
+			}
+			if (length <= Integer.MAX_VALUE) {
+				ByteBuffer mapped = channel.map(MapMode.READ_ONLY, position, length);
+				channel.close();
+				return new BufferBody(mapped);
+			}
+			return new ChannelBody(channel, length);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * The channel contents. The channel is closed when the response ends.
+	 * 
+	 * @param length The number of bytes the channel provides, or
+	 *               {@link #UNKNOWN_LENGTH}.
+	 */
+	public static ResponseBody of(ReadableByteChannel channel, long length) {
+		return new ChannelBody(channel, length);
+	}
+
+	/**
+	 * The stream contents. The stream is closed when the response ends.
+	 * 
+	 * @param length The number of bytes the stream provides, or
+	 *               {@link #UNKNOWN_LENGTH}.
+	 */
+	public static ResponseBody of(InputStream stream, long length) {
+		return new StreamBody(stream, length);
+	}
+
+	private static class BufferBody extends ResponseBody {
+		private final ByteBuffer buffer;
+
+		BufferBody(ByteBuffer buffer) {
+			super(buffer.remaining());
+			this.buffer = buffer;
+		}
+
+		@Override
+		int read(byte[] out, int length) {
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int read = Math.min(length, buffer.remaining());
+			buffer.get(out, 0, read);
+			return read;
+		}
+
+		@Override
+		boolean isBuffered() {
+			return true;
+		}
+	}
+
+	private static class ChannelBody extends ResponseBody {
+		private final ReadableByteChannel channel;
+
+		ChannelBody(ReadableByteChannel channel, long length) {
+			super(length);
+			this.channel = channel;
+		}
+
+		@Override
+		int read(byte[] out, int length) throws IOException {
+			ByteBuffer target = ByteBuffer.wrap(out, 0, length);
+			int read;
+			do {
+				read = channel.read(target);
+			} while (read == 0);
+			return read;
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	private static class StreamBody extends ResponseBody {
+		private final InputStream stream;
+
+		StreamBody(InputStream stream, long length) {
+			super(length);
+			this.stream = stream;
+		}
+
+		@Override
+		int read(byte[] out, int length) throws IOException {
+			int read;
+			do {
+				read = stream.read(out, 0, length);
+			} while (read == 0);
+			return read;
+		}
+
+		@Override
+		public void close() throws IOException {
+			stream.close();
+		}
+	}
+}
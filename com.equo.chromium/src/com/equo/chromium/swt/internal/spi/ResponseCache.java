@@ -0,0 +1,474 @@
+/****************************************************************************
+**
+** Copyright (C) 2024 Equo
+**
+** This file is part of Equo Chromium.
+**
+** Commercial License Usage
+** Licensees holding valid commercial Equo licenses may use this file in
+** accordance with the commercial license agreement provided with the
+** Software or, alternatively, in accordance with the terms contained in
+** a written agreement between you and Equo. For licensing terms
+** and conditions see https://www.equo.dev/terms.
+**
+** GNU General Public License Usage
+** Alternatively, this file may be used under the terms of the GNU
+** General Public License version 3 as published by the Free Software
+** Foundation. Please review the following
+** information to ensure the GNU General Public License requirements will
+** be met: https://www.gnu.org/licenses/gpl-3.0.html.
+**
+****************************************************************************/
+package com.equo.chromium.swt.internal.spi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cef.handler.CefResourceHandler;
+import org.cef.network.CefRequest;
+
+/**
+ * Size-bounded LRU cache of custom scheme responses. Successful GET responses
+ * are stored off-heap when the handler marks them fresh with Cache-Control
+ * max-age or immutable, and are answered again without calling the handler
+ * until they expire. Requests with an If-None-Match matching the ETag, or an
+ * If-Modified-Since matching the Last-Modified, of a fresh entry get a 304.
+ * Expired entries with an ETag or Last-Modified are revalidated with the
+ * handler, and their body is reused if it answers 304. Entries are keyed by URL
+ * and Accept-Encoding and shared by all the browsers and request contexts, so
+ * requests with Cookie or Authorization and responses with Vary or Set-Cookie
+ * are not cached. The size in bytes is set with chromium.scheme_cache_size,
+ * disabled by default.
+ */
+public final class ResponseCache {
+	private static final ResponseCache instance = new ResponseCache(Long.getLong("chromium.scheme_cache_size", 0));
+
+	private static class Entry {
+		final Map<String, String> headers;
+		final ByteBuffer body;
+		final String contentEncoding;
+		final long expires;
+
+		Entry(Map<String, String> headers, ByteBuffer body, String contentEncoding, long expires) {
+			this.headers = headers;
+			this.body = body;
+			this.contentEncoding = contentEncoding;
+			this.expires = expires;
+		}
+
+		boolean isFresh() {
+			return expires == Long.MAX_VALUE || System.nanoTime() - expires < 0;
+		}
+
+		boolean canRevalidate() {
+			return headers.containsKey("ETag") || headers.containsKey("Last-Modified");
+		}
+	}
+
+	private final long capacity;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long size;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong notModified = new AtomicLong();
+	private final AtomicLong revalidations = new AtomicLong();
+
+	ResponseCache(long capacity) {
+		this.capacity = capacity;
+	}
+
+	public static ResponseCache getDefault() {
+		return instance;
+	}
+
+	/**
+	 * Creates the resource handler of a request, answering from the cache when
+	 * possible and otherwise delegating to the scheme handler and storing its
+	 * response if it is cacheable.
+	 * 
+	 * @return the resource handler, or null if the scheme handler does not
+	 *         process the request.
+	 */
+	CefResourceHandler createHandler(CefRequest request, SchemeHandler schemeHandler) {
+		String key = getKey(request);
+		if (key != null) {
+			Entry entry = get(key);
+			if (entry != null && entry.isFresh()) {
+				hits.incrementAndGet();
+				return new DelegatingCefResourceHandler(new CachedSchemeHandler(entry, isNotModified(request, entry)));
+			}
+			misses.incrementAndGet();
+			schemeHandler = new CachingSchemeHandler(schemeHandler, key, entry);
+		}
+		CefResourceHandler handler = new DelegatingCefResourceHandler(schemeHandler);
+		if (handler.processRequest(request, null)) {
+			return handler;
+		}
+		return null;
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return The number of hits answered with 304 Not Modified.
+	 */
+	public long getNotModifiedCount() {
+		return notModified.get();
+	}
+
+	/**
+	 * @return The number of expired entries the handler answered with 304 Not
+	 *         Modified, whose body was reused.
+	 */
+	public long getRevalidationCount() {
+		return revalidations.get();
+	}
+
+	/**
+	 * @return The number of body bytes currently cached.
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		size = 0;
+	}
+
+	private String getKey(CefRequest request) {
+		if (capacity <= 0 || !"GET".equals(request.getMethod())) {
+			return null;
+		}
+		// The response may depend on the user or the request context
+		if (hasHeader(request, "Cookie") || hasHeader(request, "Authorization")) {
+			return null;
+		}
+		String url = request.getURL();
+		int fragment = url.indexOf('#');
+		String acceptEncoding = request.getHeaderByName("Accept-Encoding");
+		return (fragment < 0 ? url : url.substring(0, fragment)) + '\n'
+				+ (acceptEncoding == null ? "" : acceptEncoding.trim());
+	}
+
+	private static boolean hasHeader(CefRequest request, String name) {
+		String value = request.getHeaderByName(name);
+		return value != null && !value.isEmpty();
+	}
+
+	/**
+	 * @return The fresh entry of the key, an expired entry that can be
+	 *         revalidated, or null.
+	 */
+	private synchronized Entry get(String key) {
+		Entry entry = entries.get(key);
+		if (entry != null && !entry.isFresh() && !entry.canRevalidate()) {
+			remove(key);
+			return null;
+		}
+		return entry;
+	}
+
+	private boolean isNotModified(CefRequest request, Entry entry) {
+		String etag = entry.headers.get("ETag");
+		String ifNoneMatch = request.getHeaderByName("If-None-Match");
+		boolean notModified;
+		if (ifNoneMatch != null && !ifNoneMatch.isEmpty()) {
+			notModified = etag != null && matches(ifNoneMatch, etag);
+		} else {
+			String lastModified = entry.headers.get("Last-Modified");
+			notModified = lastModified != null && lastModified.equals(request.getHeaderByName("If-Modified-Since"));
+		}
+		if (notModified) {
+			this.notModified.incrementAndGet();
+		}
+		return notModified;
+	}
+
+	private static boolean matches(String ifNoneMatch, String etag) {
+		String tag = weak(etag);
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if ("*".equals(candidate) || weak(candidate).equals(tag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String weak(String etag) {
+		return etag.startsWith("W/") ? etag.substring(2) : etag;
+	}
+
+	private synchronized void put(String key, Map<String, String> headers, byte[] body, int length,
+			String contentEncoding, long expires) {
+		if (length > capacity) {
+			return;
+		}
+		ByteBuffer data = ByteBuffer.allocateDirect(length);
+		data.put(body, 0, length).flip();
+		remove(key);
+		entries.put(key, new Entry(headers, data.asReadOnlyBuffer(), contentEncoding, expires));
+		size += length;
+		Iterator<Entry> it = entries.values().iterator();
+		while (size > capacity && it.hasNext()) {
+			size -= it.next().body.capacity();
+			it.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Replaces a revalidated entry, keeping its body.
+	 */
+	private synchronized void refresh(String key, Entry stale, Map<String, String> headers, long expires) {
+		if (entries.get(key) == stale) {
+			entries.put(key, new Entry(headers, stale.body, stale.contentEncoding, expires));
+		}
+	}
+
+	private void remove(String key) {
+		Entry removed = entries.remove(key);
+		if (removed != null) {
+			size -= removed.body.capacity();
+		}
+	}
+
+	/**
+	 * @return The nanoTime when the response expires, Long.MAX_VALUE for
+	 *         immutable responses, or null if it must not be cached.
+	 */
+	private static Long getExpiration(Map<String, String> headers) {
+		String status = headers.get("X-Status-Code");
+		if (status != null && !"200".equals(status.trim())) {
+			return null;
+		}
+		// The response may differ for other requests to the same URL
+		for (String name : headers.keySet()) {
+			if ("Vary".equalsIgnoreCase(name) || "Set-Cookie".equalsIgnoreCase(name)) {
+				return null;
+			}
+		}
+		String cacheControl = headers.get("Cache-Control");
+		if (cacheControl == null) {
+			return null;
+		}
+		long maxAge = -1;
+		for (String directive : cacheControl.toLowerCase().split(",")) {
+			directive = directive.trim();
+			if (directive.equals("no-store") || directive.equals("no-cache") || directive.equals("private")) {
+				return null;
+			} else if (directive.equals("immutable")) {
+				return Long.MAX_VALUE;
+			} else if (directive.startsWith("max-age=")) {
+				try {
+					maxAge = Long.parseLong(directive.substring(8).trim());
+				} catch (NumberFormatException e) {
+					return null;
+				}
+			}
+		}
+		if (maxAge <= 0) {
+			return null;
+		}
+		return System.nanoTime() + TimeUnit.SECONDS.toNanos(maxAge);
+	}
+
+	/**
+	 * Answers a request from a cache entry.
+	 */
+	private static class CachedSchemeHandler implements SchemeHandler {
+		private final Entry entry;
+		private final boolean notModified;
+
+		CachedSchemeHandler(Entry entry, boolean notModified) {
+			this.entry = entry;
+			this.notModified = notModified;
+		}
+
+		@Override
+		public boolean processRequest(String url, String method, Map<String, String> headers) {
+			return true;
+		}
+
+		@Override
+		public ResponseBody getResponseBody(Map<String, String> responseHeaders) {
+			responseHeaders.putAll(entry.headers);
+			if (notModified) {
+				responseHeaders.put("X-Status-Code", "304");
+				return null;
+			}
+			return ResponseBody.of(entry.body.duplicate()).encoded(entry.contentEncoding);
+		}
+	}
+
+	/**
+	 * Delegates to a scheme handler and stores its response once it was read
+	 * completely.
+	 */
+	private class CachingSchemeHandler implements SchemeHandler {
+		private final SchemeHandler delegate;
+		private final String key;
+		private Entry stale;
+
+		CachingSchemeHandler(SchemeHandler delegate, String key, Entry stale) {
+			this.delegate = delegate;
+			this.key = key;
+			this.stale = stale;
+		}
+
+		@Override
+		public boolean processRequest(String url, String method, Map<String, String> headers) {
+			if (stale != null) {
+				if (getHeader(headers, "If-None-Match") != null || getHeader(headers, "If-Modified-Since") != null) {
+					// A 304 would answer the validators of the request, not those of the entry
+					stale = null;
+				} else if (stale.headers.containsKey("ETag")) {
+					headers.put("If-None-Match", stale.headers.get("ETag"));
+				} else {
+					headers.put("If-Modified-Since", stale.headers.get("Last-Modified"));
+				}
+			}
+			return delegate.processRequest(url, method, headers);
+		}
+
+		@Override
+		public Charset getDefaultCharset(String mimeType) {
+			return delegate.getDefaultCharset(mimeType);
+		}
+
+		@Override
+		public ResponseBody getResponseBody(Map<String, String> responseHeaders) throws IOException {
+			return capture(delegate.getResponseBody(responseHeaders), responseHeaders);
+		}
+
+		@Override
+		public CompletionStage<ResponseBody> getResponseBodyAsync(Map<String, String> responseHeaders) {
+			CompletionStage<ResponseBody> body = delegate.getResponseBodyAsync(responseHeaders);
+			return body == null ? null : body.thenApply(data -> capture(data, responseHeaders));
+		}
+
+		private ResponseBody capture(ResponseBody body, Map<String, String> responseHeaders) {
+			String status = responseHeaders.get("X-Status-Code");
+			if (stale != null && status != null && "304".equals(status.trim())) {
+				return revalidated(body, responseHeaders);
+			}
+			Long expires = body == null ? null : getExpiration(responseHeaders);
+			if (expires == null || body.getLength() > capacity) {
+				return body;
+			}
+			return new CapturingBody(body, key, new HashMap<>(responseHeaders), expires);
+		}
+
+		/**
+		 * Answers with the body of the expired entry, updated with the headers of
+		 * the 304 response.
+		 */
+		private ResponseBody revalidated(ResponseBody body, Map<String, String> responseHeaders) {
+			if (body != null) {
+				try {
+					body.close();
+				} catch (IOException e) {
+				}
+			}
+			revalidations.incrementAndGet();
+			responseHeaders.remove("X-Status-Code");
+			Map<String, String> headers = new HashMap<>(stale.headers);
+			headers.putAll(responseHeaders);
+			Long expires = getExpiration(headers);
+			if (expires != null) {
+				refresh(key, stale, headers, expires);
+			}
+			responseHeaders.putAll(headers);
+			return ResponseBody.of(stale.body.duplicate()).encoded(stale.contentEncoding);
+		}
+	}
+
+	private static String getHeader(Map<String, String> headers, String name) {
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			if (name.equalsIgnoreCase(header.getKey())) {
+				return header.getValue();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Copies the body while it is read and caches it at its end.
+	 */
+	private class CapturingBody extends ResponseBody {
+		private final ResponseBody delegate;
+		private final String key;
+		private final Map<String, String> headers;
+		private final long expires;
+		private byte[] data;
+		private int length;
+
+		CapturingBody(ResponseBody delegate, String key, Map<String, String> headers, long expires) {
+			super(delegate.getLength());
+			encoded(delegate.getContentEncoding());
+			this.delegate = delegate;
+			this.key = key;
+			this.headers = headers;
+			this.expires = expires;
+			long size = delegate.getLength();
+			this.data = new byte[size >= 0 ? (int) size : 8192];
+		}
+
+		@Override
+		int read(byte[] out, int length) throws IOException {
+			int read = delegate.read(out, length);
+			if (data == null) {
+				return read;
+			}
+			if (read >= 0) {
+				if (this.length + (long) read > capacity) {
+					data = null;
+					return read;
+				}
+				if (this.length + read > data.length) {
+					data = Arrays.copyOf(data, (int) Math.min(capacity, Math.max(data.length * 2L, this.length + read)));
+				}
+				System.arraycopy(out, 0, data, this.length, read);
+				this.length += read;
+			}
+			// Chromium may stop reading once the known length was received
+			if (read < 0 || this.length == getLength()) {
+				put(key, headers, data, this.length, getContentEncoding(), expires);
+				data = null;
+			}
+			return read;
+		}
+
+		@Override
+		boolean isBuffered() {
+			return delegate.isBuffered();
+		}
+
+		@Override
+		public void close() throws IOException {
+			data = null;
+			delegate.close();
+		}
+	}
+}
@@ -0,0 +1,70 @@
+/****************************************************************************
+**
+** Copyright (C) 2024 Equo
+**
+** This file is part of Equo Chromium.
+**
+** Commercial License Usage
+** Licensees holding valid commercial Equo licenses may use this file in
+** accordance with the commercial license agreement provided with the
+** Software or, alternatively, in accordance with the terms contained in
+** a written agreement between you and Equo. For licensing terms
+** and conditions see https://www.equo.dev/terms.
+**
+** GNU General Public License Usage
+** Alternatively, this file may be used under the terms of the GNU
+** General Public License version 3 as published by the Free Software
+** Foundation. Please review the following
+** information to ensure the GNU General Public License requirements will
+** be met: https://www.gnu.org/licenses/gpl-3.0.html.
+**
+****************************************************************************/
+
+
+
+package com.equo.chromium.swt.internal.spi;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * Decides whether a handler can serve more than one request. Handlers that do
+ * not override {@link SchemeHandler#isReusable()} are reused when all their
+ * instance fields are final, as they cannot keep state between requests.
+ */
+final class ReusableHandlers {
+	private static final ClassValue<Boolean> stateless = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+				for (Field field : c.getDeclaredFields()) {
+					int modifiers = field.getModifiers();
+					if (!Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers)) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+	};
+
+	private static final ClassValue<Boolean> overridden = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			try {
+				return type.getMethod("isReusable").getDeclaringClass() != SchemeHandler.class;
+			} catch (NoSuchMethodException | SecurityException e) {
+				return true;
+			}
+		}
+	};
+
+	private ReusableHandlers() {
+	}
+
+	static boolean isReusable(SchemeHandler handler) {
+		Class<?> type = handler.getClass();
+		return overridden.get(type) ? handler.isReusable() : stateless.get(type);
+	}
+
+}
@@ -23,18 +23,51 @@
 
 package com.equo.chromium.swt.internal.spi;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
 
 public interface SchemeHandler {
 
 	public boolean processRequest(String url, String method, Map<String, String> headers);
 
+	/**
+	 * Return true if this instance keeps no state between requests and can serve
+	 * any number of them concurrently, so it may be reused for later requests to
+	 * the same scheme and authority instead of asking the SchemeHandlerManager.
+	 * If not overridden, handlers whose instance fields are all final are reused.
+	 */
+	default public boolean isReusable() {
+		return false;
+	}
+
 	default public Charset getDefaultCharset(String mimeType) {
 		return Charset.defaultCharset();
 	}
 	
-	public InputStream getResponseData(Map<String, String> responseHeaders);
+	default public InputStream getResponseData(Map<String, String> responseHeaders) {
+		return null;
+	}
+
+	/**
+	 * Override instead of getResponseData to serve a ByteBuffer, a file or a body
+	 * of known length. Defaults to the getResponseData stream.
+	 */
+	default public ResponseBody getResponseBody(Map<String, String> responseHeaders) throws IOException {
+		InputStream data = getResponseData(responseHeaders);
+		return data == null ? null : ResponseBody.of(data, ResponseBody.UNKNOWN_LENGTH);
+	}
+
+	/**
+	 * Override to produce the response without blocking the CEF IO thread. The
+	 * responseHeaders must be filled before the stage completes, and bodies that
+	 * are not in memory are then read on a separate thread. A null body responds
+	 * 404 and a failed stage 500. Defaults to null, which uses getResponseBody.
+	 */
+	default public CompletionStage<ResponseBody> getResponseBodyAsync(Map<String, String> responseHeaders) {
+		return null;
+	}
 
 }
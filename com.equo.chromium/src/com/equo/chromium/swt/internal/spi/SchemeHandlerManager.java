@@ -26,6 +26,8 @@ package com.equo.chromium.swt.internal.spi;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ServiceLoader;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 public interface SchemeHandlerManager {
 
@@ -33,6 +35,31 @@ public interface SchemeHandlerManager {
 
 	public SchemeHandler getSchemeHandler(String scheme, String domain);
 
+	/**
+	 * Looks up the handler of a scheme and domain once. The supplier returns the
+	 * handler of each request, and may be kept while the handler is registered.
+	 * By default it reuses the handler if {@link SchemeHandler#isReusable()}, or if
+	 * the handler does not override it and has only final instance fields, and
+	 * otherwise calls {@link #getSchemeHandler(String, String)} again; managers
+	 * that can create handlers without looking them up should override it.
+	 * 
+	 * @return The supplier, or null if no handler is registered.
+	 */
+	default public Supplier<SchemeHandler> getSchemeHandlerFactory(String scheme, String domain) {
+		SchemeHandler handler = getSchemeHandler(scheme, domain);
+		if (handler == null) {
+			return null;
+		}
+		if (ReusableHandlers.isReusable(handler)) {
+			return () -> handler;
+		}
+		AtomicReference<SchemeHandler> first = new AtomicReference<>(handler);
+		return () -> {
+			SchemeHandler unused = first.getAndSet(null);
+			return unused != null ? unused : getSchemeHandler(scheme, domain);
+		};
+	}
+
 	public static SchemeHandlerManager get() {
 		ServiceLoader<SchemeHandlerManager> serviceLoader = ServiceLoader.load(SchemeHandlerManager.class,
 				SchemeHandlerManager.class.getClassLoader());
@@ -44,10 +44,7 @@ public class StaticCefSchemeHandlerFactory implements CefSchemeHandlerFactory {
 		SchemeHandler schemeHandler = schemeHandlerManager.getSchemeHandler(schemeData.getScheme(),
 				schemeData.getDomain());
 		if (schemeHandler != null) {
-			CefResourceHandler handler = new DelegatingCefResourceHandler(schemeHandler);
-			if (handler.processRequest(request, null)) {
-				return handler;
-			}
+			return ResponseCache.getDefault().createHandler(request, schemeHandler);
 		}
 		return null;
 	}
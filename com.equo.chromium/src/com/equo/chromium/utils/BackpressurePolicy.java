@@ -0,0 +1,54 @@
+/****************************************************************************
+**
+** Copyright (C) 2024 Equo
+**
+** This file is part of Equo Chromium.
+**
+** Commercial License Usage
+** Licensees holding valid commercial Equo licenses may use this file in
+** accordance with the commercial license agreement provided with the
+** Software or, alternatively, in accordance with the terms contained in
+** a written agreement between you and Equo. For licensing terms
+** and conditions see https://www.equo.dev/terms.
+**
+** GNU General Public License Usage
+** Alternatively, this file may be used under the terms of the GNU
+** General Public License version 3 as published by the Free Software
+** Foundation. Please review the following
+** information to ensure the GNU General Public License requirements will
+** be met: https://www.gnu.org/licenses/gpl-3.0.html.
+**
+****************************************************************************/
+
+
+package com.equo.chromium.utils;
+
+/**
+ * Policy applied when subscribers of an {@link EventType} cannot keep up with
+ * the rate at which the browser fires the event. Defaults to {@link #BUFFER}.
+ */
+public enum BackpressurePolicy {
+	/**
+	 * Discard new events while the pending queue of the event type is full.
+	 */
+	DROP,
+
+	/**
+	 * Keep only the most recent pending event of the event type, replacing any
+	 * event that has not been delivered yet.
+	 */
+	COALESCE,
+
+	/**
+	 * Block the notifying thread until the pending queue of the event type has
+	 * room for the new event. Events fired on the CEF UI thread are queued
+	 * without waiting, so that thread is never blocked.
+	 */
+	BLOCK,
+
+	/**
+	 * Queue every event without limit, so no event is lost and the notifying
+	 * thread never waits.
+	 */
+	BUFFER
+}
@@ -0,0 +1,80 @@
+/****************************************************************************
+**
+** Copyright (C) 2024 Equo
+**
+** This file is part of Equo Chromium.
+**
+** Commercial License Usage
+** Licensees holding valid commercial Equo licenses may use this file in
+** accordance with the commercial license agreement provided with the
+** Software or, alternatively, in accordance with the terms contained in
+** a written agreement between you and Equo. For licensing terms
+** and conditions see https://www.equo.dev/terms.
+**
+** GNU General Public License Usage
+** Alternatively, this file may be used under the terms of the GNU
+** General Public License version 3 as published by the Free Software
+** Foundation. Please review the following
+** information to ensure the GNU General Public License requirements will
+** be met: https://www.gnu.org/licenses/gpl-3.0.html.
+**
+****************************************************************************/
+
+
+package com.equo.chromium.utils;
+
+import java.util.Map;
+
+/**
+ * Event fired when the page writes a message to the console.
+ */
+public class ConsoleMessageEvent extends Event {
+	private final Enum<?> level;
+	private final String message;
+	private final String source;
+	private final int line;
+
+	public ConsoleMessageEvent(Enum<?> level, String message, String source, int line) {
+		super(EventType.onConsoleMessage);
+		this.level = level;
+		this.message = message;
+		this.source = source;
+		this.line = line;
+	}
+
+	/**
+	 * @return Returns the severity of the message, e.g. LOGSEVERITY_ERROR.
+	 */
+	public String getLevel() {
+		return String.valueOf(level);
+	}
+
+	/**
+	 * @return Returns the message.
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * @return Returns the source of the message.
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * @return Returns the line of the source that produced the message.
+	 */
+	public int getLine() {
+		return line;
+	}
+
+	@Override
+	protected void fill(Map<String, Object> data) {
+		data.put("level", getLevel());
+		data.put("message", message);
+		data.put("source", source);
+		data.put("line", line);
+	}
+}
@@ -0,0 +1,93 @@
+/****************************************************************************
+**
+** Copyright (C) 2024 Equo
+**
+** This file is part of Equo Chromium.
+**
+** Commercial License Usage
+** Licensees holding valid commercial Equo licenses may use this file in
+** accordance with the commercial license agreement provided with the
+** Software or, alternatively, in accordance with the terms contained in
+** a written agreement between you and Equo. For licensing terms
+** and conditions see https://www.equo.dev/terms.
+**
+** GNU General Public License Usage
+** Alternatively, this file may be used under the terms of the GNU
+** General Public License version 3 as published by the Free Software
+** Foundation. Please review the following
+** information to ensure the GNU General Public License requirements will
+** be met: https://www.gnu.org/licenses/gpl-3.0.html.
+**
+****************************************************************************/
+
+
+package com.equo.chromium.utils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable event passed to an {@link EventListener}. Subclasses carry the
+ * payload of their {@link EventType} and only build it when it is read.
+ */
+public class Event {
+	private static final Event[] EMPTY_EVENTS = new Event[EventType.values().length];
+	static {
+		for (EventType type : EventType.values()) {
+			EMPTY_EVENTS[type.ordinal()] = new Event(type);
+		}
+	}
+
+	private final EventType type;
+	private volatile Map<String, Object> mapData;
+
+	protected Event(EventType type) {
+		this.type = type;
+	}
+
+	/**
+	 * Returns the shared instance of an event type that has no payload.
+	 * 
+	 * @param type The type of the event.
+	 * @return An event without payload.
+	 */
+	public static Event of(EventType type) {
+		return EMPTY_EVENTS[type.ordinal()];
+	}
+
+	/**
+	 * @return Returns the type of the event.
+	 */
+	public EventType getType() {
+		return type;
+	}
+
+	/**
+	 * Gets the payload of the event as a map. {@link EventAction} receives a
+	 * mutable copy of it. The map is built the first time it is requested.
+	 * 
+	 * @return Returns an unmodifiable map with the payload of the event.
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = mapData;
+		if (map == null) {
+			Map<String, Object> data = new HashMap<>();
+			fill(data);
+			map = data.isEmpty() ? Collections.<String, Object>emptyMap() : Collections.unmodifiableMap(data);
+			mapData = map;
+		}
+		return map;
+	}
+
+	/**
+	 * Adds the payload of the event to the given map.
+	 */
+	protected void fill(Map<String, Object> data) {
+	}
+
+	@Override
+	public String toString() {
+		return type + toMap().toString();
+	}
+}
@@ -23,9 +23,16 @@
 
 package com.equo.chromium.utils;
 
+import java.util.HashMap;
 import java.util.Map;
 
-public class EventAction implements Runnable {
+/**
+ * Listener that receives the payload of the event as a map through
+ * {@link #setJsonData(Map)} before {@link #run()} is called. Prefer
+ * {@link EventListener}, which receives an immutable {@link Event} and does not
+ * share state between events.
+ */
+public class EventAction implements Runnable, EventListener {
 	protected Map<String,Object> mapData;
 
 	public EventAction setJsonData(Map<String,Object> mapData) {
@@ -38,4 +45,12 @@ public class EventAction implements Runnable {
 
 	}
 
+	@Override
+	public void handle(Event event) {
+		synchronized (this) {
+			setJsonData(new HashMap<>(event.toMap()));
+			run();
+		}
+	}
+
 }
@@ -0,0 +1,42 @@
+/****************************************************************************
+**
+** Copyright (C) 2024 Equo
+**
+** This file is part of Equo Chromium.
+**
+** Commercial License Usage
+** Licensees holding valid commercial Equo licenses may use this file in
+** accordance with the commercial license agreement provided with the
+** Software or, alternatively, in accordance with the terms contained in
+** a written agreement between you and Equo. For licensing terms
+** and conditions see https://www.equo.dev/terms.
+**
+** GNU General Public License Usage
+** Alternatively, this file may be used under the terms of the GNU
+** General Public License version 3 as published by the Free Software
+** Foundation. Please review the following
+** information to ensure the GNU General Public License requirements will
+** be met: https://www.gnu.org/licenses/gpl-3.0.html.
+**
+****************************************************************************/
+
+
+package com.equo.chromium.utils;
+
+/**
+ * Listener of browser events. The received {@link Event} can be cast to the
+ * class matching its type: {@link LoadEndEvent} for onLoadEnd,
+ * {@link ConsoleMessageEvent} for onConsoleMessage, {@link FindResultEvent} for
+ * onFindResult, {@link NavigationEvent} for onNavigationFinished and
+ * onLoadError, {@link ClipboardEvent} for the clipboard events and
+ * {@link AfterCreatedEvent} for onAfterCreated.
+ */
+@FunctionalInterface
+public interface EventListener {
+	/**
+	 * Called for each event of the subscribed type.
+	 * 
+	 * @param event The immutable event.
+	 */
+	void handle(Event event);
+}
@@ -0,0 +1,60 @@
+/****************************************************************************
+**
+** Copyright (C) 2024 Equo
+**
+** This file is part of Equo Chromium.
+**
+** Commercial License Usage
+** Licensees holding valid commercial Equo licenses may use this file in
+** accordance with the commercial license agreement provided with the
+** Software or, alternatively, in accordance with the terms contained in
+** a written agreement between you and Equo. For licensing terms
+** and conditions see https://www.equo.dev/terms.
+**
+** GNU General Public License Usage
+** Alternatively, this file may be used under the terms of the GNU
+** General Public License version 3 as published by the Free Software
+** Foundation. Please review the following
+** information to ensure the GNU General Public License requirements will
+** be met: https://www.gnu.org/licenses/gpl-3.0.html.
+**
+****************************************************************************/
+
+
+package com.equo.chromium.utils;
+
+import java.util.Map;
+
+/**
+ * Event fired with the final result of a find operation.
+ */
+public class FindResultEvent extends Event {
+	private final int count;
+	private final int activeMatchOrdinal;
+
+	public FindResultEvent(int count, int activeMatchOrdinal) {
+		super(EventType.onFindResult);
+		this.count = count;
+		this.activeMatchOrdinal = activeMatchOrdinal;
+	}
+
+	/**
+	 * @return Returns the number of matches.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return Returns the ordinal of the active match.
+	 */
+	public int getActiveMatchOrdinal() {
+		return activeMatchOrdinal;
+	}
+
+	@Override
+	protected void fill(Map<String, Object> data) {
+		data.put("count", count);
+		data.put("activeMatchOrdinal", activeMatchOrdinal);
+	}
+}
@@ -0,0 +1,270 @@
+/****************************************************************************
+**
+** Copyright (C) 2024 Equo
+**
+** This file is part of Equo Chromium.
+**
+** Commercial License Usage
+** Licensees holding valid commercial Equo licenses may use this file in
+** accordance with the commercial license agreement provided with the
+** Software or, alternatively, in accordance with the terms contained in
+** a written agreement between you and Equo. For licensing terms
+** and conditions see https://www.equo.dev/terms.
+**
+** GNU General Public License Usage
+** Alternatively, this file may be used under the terms of the GNU
+** General Public License version 3 as published by the Free Software
+** Foundation. Please review the following
+** information to ensure the GNU General Public License requirements will
+** be met: https://www.gnu.org/licenses/gpl-3.0.html.
+**
+****************************************************************************/
+package com.equo.chromium.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.cef.browser.CefPaintEvent;
+import org.cef.misc.Rectangle;
+
+/**
+ * Keeps a persistent BGRA copy of the frames painted by a Windowless browser.
+ * It can be added as a frame listener with
+ * browser.addFrameListener(compositor). Only the dirty regions of each paint
+ * are applied, and the frame is split into square tiles whose hashes are
+ * recomputed when touched, so checking whether the page visually changed since
+ * a given frame does not require comparing pixels.
+ */
+public final class FrameCompositor implements Consumer<CefPaintEvent> {
+	/**
+	 * Default tile side length in pixels.
+	 */
+	public static final int DEFAULT_TILE_SIZE = 64;
+
+	private final int tileSize;
+	private ByteBuffer frame;
+	private int width;
+	private int height;
+	private int columns;
+	private long[] tileHashes = new long[0];
+	private long[] tileFrames = new long[0];
+	private boolean[] touched = new boolean[0];
+	private long frameNumber;
+	private long changedFrame;
+
+	public FrameCompositor() {
+		this(DEFAULT_TILE_SIZE);
+	}
+
+	/**
+	 * @param tileSize The tile side length in pixels used to detect changes.
+	 */
+	public FrameCompositor(int tileSize) {
+		if (tileSize <= 0) {
+			throw new IllegalArgumentException("tileSize must be positive");
+		}
+		this.tileSize = tileSize;
+	}
+
+	/**
+	 * Applies the dirty regions of a painted frame. Popup paints are ignored.
+	 */
+	@Override
+	public synchronized void accept(CefPaintEvent event) {
+		if (event.getPopup()) {
+			return;
+		}
+		frameNumber++;
+		int w = event.getWidth();
+		int h = event.getHeight();
+		ByteBuffer source = event.getRenderedFrame();
+		if (frame == null || w != width || h != height) {
+			resize(w, h);
+			copy(source, 0, 0, w, h);
+			Arrays.fill(touched, true);
+		} else {
+			for (Rectangle rect : event.getDirtyRects()) {
+				int x = Math.max(0, rect.x);
+				int y = Math.max(0, rect.y);
+				int right = Math.min(width, rect.x + rect.width);
+				int bottom = Math.min(height, rect.y + rect.height);
+				if (right <= x || bottom <= y) {
+					continue;
+				}
+				copy(source, x, y, right, bottom);
+				for (int row = y / tileSize; row <= (bottom - 1) / tileSize; row++) {
+					for (int column = x / tileSize; column <= (right - 1) / tileSize; column++) {
+						touched[row * columns + column] = true;
+					}
+				}
+			}
+		}
+		for (int tile = 0; tile < touched.length; tile++) {
+			if (touched[tile]) {
+				touched[tile] = false;
+				long hash = hashTile(tile);
+				if (hash != tileHashes[tile] || tileFrames[tile] == 0) {
+					tileHashes[tile] = hash;
+					tileFrames[tile] = frameNumber;
+					changedFrame = frameNumber;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The number of the last applied frame, starting at 1. Zero if no
+	 *         frame was applied yet.
+	 */
+	public synchronized long getFrameNumber() {
+		return frameNumber;
+	}
+
+	/**
+	 * @return The number of the last frame that visually changed the page.
+	 */
+	public synchronized long getLastChangedFrame() {
+		return changedFrame;
+	}
+
+	/**
+	 * @param frameNumber A frame number previously returned by
+	 *                    {@link #getFrameNumber()}.
+	 * @return true if any pixel changed after the given frame.
+	 */
+	public synchronized boolean hasChangedSince(long frameNumber) {
+		return changedFrame > frameNumber;
+	}
+
+	/**
+	 * @param frameNumber A frame number previously returned by
+	 *                    {@link #getFrameNumber()}.
+	 * @return The tiles whose pixels changed after the given frame, clipped to
+	 *         the frame size.
+	 */
+	public synchronized Rectangle[] getChangedTiles(long frameNumber) {
+		if (changedFrame <= frameNumber) {
+			return new Rectangle[0];
+		}
+		List<Rectangle> tiles = new ArrayList<>();
+		for (int tile = 0; tile < tileFrames.length; tile++) {
+			if (tileFrames[tile] > frameNumber) {
+				tiles.add(getTileBounds(tile));
+			}
+		}
+		return tiles.toArray(new Rectangle[tiles.size()]);
+	}
+
+	/**
+	 * Copies the current frame.
+	 * 
+	 * @param target The buffer to fill with width * height * 4 bytes of BGRA
+	 *               pixels, starting at its position.
+	 * @return The number of the copied frame.
+	 */
+	public synchronized long copyFrame(ByteBuffer target) {
+		if (frame != null) {
+			ByteBuffer src = frame.duplicate();
+			src.clear();
+			target.put(src);
+		}
+		return frameNumber;
+	}
+
+	public synchronized int getWidth() {
+		return width;
+	}
+
+	public synchronized int getHeight() {
+		return height;
+	}
+
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	/**
+	 * Discards the current frame, so the next paint is applied as a full change.
+	 */
+	public synchronized void reset() {
+		frame = null;
+		width = height = columns = 0;
+		tileHashes = tileFrames = new long[0];
+		touched = new boolean[0];
+	}
+
+	private void resize(int w, int h) {
+		width = w;
+		height = h;
+		int size = w * h * 4;
+		if (frame == null || frame.capacity() < size) {
+			frame = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+		}
+		frame.clear().limit(size);
+		columns = (w + tileSize - 1) / tileSize;
+		int rows = (h + tileSize - 1) / tileSize;
+		tileHashes = new long[columns * rows];
+		tileFrames = new long[columns * rows];
+		touched = new boolean[columns * rows];
+	}
+
+	/**
+	 * Copies a region of a frame of the current width, from column x to right and
+	 * from row y to bottom, excluded.
+	 */
+	private void copy(ByteBuffer source, int x, int y, int right, int bottom) {
+		ByteBuffer src = source.duplicate();
+		ByteBuffer dst = frame.duplicate();
+		int stride = width * 4;
+		if (x == 0 && right == width) {
+			// whole rows are contiguous
+			src.limit(bottom * stride);
+			src.position(y * stride);
+			dst.position(y * stride);
+			dst.put(src);
+			return;
+		}
+		int length = (right - x) * 4;
+		for (int row = y; row < bottom; row++) {
+			int offset = row * stride + x * 4;
+			src.limit(offset + length);
+			src.position(offset);
+			dst.position(offset);
+			dst.put(src);
+			src.clear();
+		}
+	}
+
+	private Rectangle getTileBounds(int tile) {
+		int x = (tile % columns) * tileSize;
+		int y = (tile / columns) * tileSize;
+		return new Rectangle(x, y, Math.min(tileSize, width - x), Math.min(tileSize, height - y));
+	}
+
+	private long hashTile(int tile) {
+		Rectangle bounds = getTileBounds(tile);
+		int stride = width * 4;
+		long hash = 0xcbf29ce484222325L;
+		for (int row = bounds.y; row < bounds.y + bounds.height; row++) {
+			int offset = row * stride + bounds.x * 4;
+			int end = offset + bounds.width * 4;
+			for (; offset + 8 <= end; offset += 8) {
+				hash = mix(hash, frame.getLong(offset));
+			}
+			if (offset < end) {
+				hash = mix(hash, frame.getInt(offset));
+			}
+		}
+		return hash;
+	}
+
+	private static long mix(long hash, long value) {
+		hash ^= value;
+		hash *= 0x9e3779b97f4a7c15L;
+		return hash ^ (hash >>> 29);
+	}
+}
@@ -0,0 +1,137 @@
+/****************************************************************************
+**
+** Copyright (C) 2024 Equo
+**
+** This file is part of Equo Chromium.
+**
+** Commercial License Usage
+** Licensees holding valid commercial Equo licenses may use this file in
+** accordance with the commercial license agreement provided with the
+** Software or, alternatively, in accordance with the terms contained in
+** a written agreement between you and Equo. For licensing terms
+** and conditions see https://www.equo.dev/terms.
+**
+** GNU General Public License Usage
+** Alternatively, this file may be used under the terms of the GNU
+** General Public License version 3 as published by the Free Software
+** Foundation. Please review the following
+** information to ensure the GNU General Public License requirements will
+** be met: https://www.gnu.org/licenses/gpl-3.0.html.
+**
+****************************************************************************/
+
+
+package com.equo.chromium.utils;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Event fired when a frame finishes loading. The HTML source of the frame is
+ * only requested to the browser the first time it is read.
+ */
+public class LoadEndEvent extends Event {
+	private final boolean main;
+	private final String name;
+	private final String id;
+	private final String parentId;
+	private final Supplier<CompletableFuture<String>> sourceFetcher;
+	private CompletableFuture<String> source;
+
+	public LoadEndEvent(boolean main, String name, String id, String parentId,
+			Supplier<CompletableFuture<String>> sourceFetcher) {
+		super(EventType.onLoadEnd);
+		this.main = main;
+		this.name = name;
+		this.id = id;
+		this.parentId = parentId;
+		this.sourceFetcher = sourceFetcher;
+	}
+
+	/**
+	 * @return Returns true if the frame is the main frame.
+	 */
+	public boolean isMain() {
+		return main;
+	}
+
+	/**
+	 * @return Returns the name of the frame.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return Returns the identifier of the frame.
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return Returns the identifier of the parent frame or "0" for the main frame.
+	 */
+	public String getParentId() {
+		return parentId;
+	}
+
+	/**
+	 * Requests the HTML source of the frame. The source is fetched once and shared
+	 * by all the calls.
+	 * 
+	 * @return Returns a CompletableFuture that completes with the HTML source of
+	 *         the frame. It completes exceptionally if the frame navigates or the
+	 *         browser closes first, or after chromium.source_timeout
+	 *         milliseconds.
+	 */
+	public synchronized CompletableFuture<String> getSource() {
+		if (source == null) {
+			source = sourceFetcher.get();
+		}
+		return source;
+	}
+
+	/**
+	 * Gets the HTML source of the frame, waiting for it to be fetched. Must not be
+	 * called from the CEF UI thread.
+	 * 
+	 * @return Returns the HTML source of the frame.
+	 * @throws java.util.concurrent.CompletionException if the source could not
+	 *                                                  be fetched.
+	 */
+	public String getHtml() {
+		return getSource().join();
+	}
+
+	/**
+	 * Gets a reader over the HTML source of the frame, waiting for it to be
+	 * fetched. Must not be called from the CEF UI thread.
+	 * 
+	 * @return Returns a reader over the HTML source of the frame.
+	 */
+	public Reader getHtmlReader() {
+		return new StringReader(getHtml());
+	}
+
+	/**
+	 * @return The source if it was already fetched, otherwise an empty string.
+	 */
+	private String getFetchedSource() {
+		CompletableFuture<String> source = getSource();
+		return source.isDone() && !source.isCompletedExceptionally() ? source.join() : "";
+	}
+
+	@Override
+	protected void fill(Map<String, Object> data) {
+		data.put("isMain", main);
+		// Same escaping EventAction subscribers always received
+		data.put("html", getFetchedSource().replace("\"", "\\\"").replace("\n", "\\n"));
+		data.put("name", name);
+		data.put("id", id);
+		data.put("parentId", parentId);
+	}
+}
@@ -0,0 +1,50 @@
+/****************************************************************************
+**
+** Copyright (C) 2024 Equo
+**
+** This file is part of Equo Chromium.
+**
+** Commercial License Usage
+** Licensees holding valid commercial Equo licenses may use this file in
+** accordance with the commercial license agreement provided with the
+** Software or, alternatively, in accordance with the terms contained in
+** a written agreement between you and Equo. For licensing terms
+** and conditions see https://www.equo.dev/terms.
+**
+** GNU General Public License Usage
+** Alternatively, this file may be used under the terms of the GNU
+** General Public License version 3 as published by the Free Software
+** Foundation. Please review the following
+** information to ensure the GNU General Public License requirements will
+** be met: https://www.gnu.org/licenses/gpl-3.0.html.
+**
+****************************************************************************/
+
+
+package com.equo.chromium.utils;
+
+import java.util.Map;
+
+/**
+ * Event fired when a navigation finishes or fails to load.
+ */
+public class NavigationEvent extends Event {
+	private final int errorCode;
+
+	public NavigationEvent(EventType type, int errorCode) {
+		super(type);
+		this.errorCode = errorCode;
+	}
+
+	/**
+	 * @return Returns the error code of the navigation, or 0 if there was no error.
+	 */
+	public int getErrorCode() {
+		return errorCode;
+	}
+
+	@Override
+	protected void fill(Map<String, Object> data) {
+		data.put("errorCode", errorCode);
+	}
+}
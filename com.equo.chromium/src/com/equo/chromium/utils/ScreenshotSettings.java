@@ -0,0 +1,97 @@
+/****************************************************************************
+**
+** Copyright (C) 2024 Equo
+**
+** This file is part of Equo Chromium.
+**
+** Commercial License Usage
+** Licensees holding valid commercial Equo licenses may use this file in
+** accordance with the commercial license agreement provided with the
+** Software or, alternatively, in accordance with the terms contained in
+** a written agreement between you and Equo. For licensing terms
+** and conditions see https://www.equo.dev/terms.
+**
+** GNU General Public License Usage
+** Alternatively, this file may be used under the terms of the GNU
+** General Public License version 3 as published by the Free Software
+** Foundation. Please review the following
+** information to ensure the GNU General Public License requirements will
+** be met: https://www.gnu.org/licenses/gpl-3.0.html.
+**
+****************************************************************************/
+
+
+package com.equo.chromium.utils;
+
+/**
+ * Screenshot settings for browser.captureScreenshot(ScreenshotSettings)
+ */
+public class ScreenshotSettings {
+	/**
+	 * Image compression formats.
+	 */
+	public enum Format {
+		PNG,
+
+		JPEG,
+
+		WEBP
+	}
+
+	/**
+	 * Image compression format. Defaults to PNG.
+	 */
+	public Format format = Format.PNG;
+
+	/**
+	 * Compression quality from 0 to 100. Only used for JPEG and WEBP. A negative
+	 * value uses the browser default.
+	 */
+	public int quality = -1;
+
+	/**
+	 * The x coordinate of the captured area. Only used if width and height are
+	 * greater than zero.
+	 */
+	public double x;
+
+	/**
+	 * The y coordinate of the captured area. Only used if width and height are
+	 * greater than zero.
+	 */
+	public double y;
+
+	/**
+	 * The width of the captured area. If either width or height is less than or
+	 * equal to zero the whole viewport is captured.
+	 */
+	public double width;
+
+	/**
+	 * The height of the captured area. If either width or height is less than or
+	 * equal to zero the whole viewport is captured.
+	 */
+	public double height;
+
+	/**
+	 * The scale of the captured area. Defaults to 1.
+	 */
+	public double scale = 1;
+
+	/**
+	 * Set to true to capture the screenshot from the surface rather than the view.
+	 * Defaults to true.
+	 */
+	public boolean from_surface = true;
+
+	/**
+	 * Set to true to capture the screenshot beyond the viewport. Defaults to false.
+	 */
+	public boolean capture_beyond_viewport;
+
+	/**
+	 * Set to true to optimize the image encoding for speed rather than size.
+	 * Defaults to false.
+	 */
+	public boolean optimize_for_speed;
+}
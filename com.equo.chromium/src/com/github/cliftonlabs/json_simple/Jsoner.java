@@ -380,7 +380,7 @@ public class Jsoner{
 	 *         characters [u007F..u009F], [u2000..u20FF] with a
 	 *         backslash (\) which itself must be escaped by the backslash in a java string. */
 	public static String escape(final String escapable){
-		final StringBuilder builder = new StringBuilder();
+		final StringBuilder builder = new StringBuilder(escapable.length() + 16);
 		final int characters = escapable.length();
 		for(int i = 0; i < characters; i++){
 			final char character = escapable.charAt(i);